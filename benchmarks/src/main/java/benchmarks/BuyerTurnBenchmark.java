@@ -0,0 +1,77 @@
+package benchmarks;
+
+import agents.BuyerAgent;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One BuyerAgent.respondToSeller call end to end: pricing, Q-learning update, tactic choice and dialogue.
+ *
+ * The seller concedes along a fixed schedule; when a negotiation ends (deal, walk-away or the
+ * schedule runs out) the buyer is reset and reseeded, so the sequence of turns is the same on every run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuyerTurnBenchmark {
+
+    private static final double ASKING = 450.0;
+    private static final double RESERVATION = 320.0;
+    private static final double TARGET = 240.0;
+    private static final int MAX_TURNS = 15;
+
+    @Param({"markov", "contextual"})
+    public String generator;
+
+    private BuyerAgent buyer;
+    private double[] sellerPrices;
+    private String[] sellerMessages;
+    private int turn;
+    private long negotiation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("contextual".equals(generator)) {
+            ContextualDialogueGenerator contextual = new ContextualDialogueGenerator(SampleCorpus.examples());
+            contextual.setSeed(SampleCorpus.SEED);
+            buyer = new BuyerAgent(contextual, RESERVATION, TARGET);
+        } else {
+            MarkovDialogueGenerator markov = new MarkovDialogueGenerator(SampleCorpus.examples(), 3);
+            markov.setSeed(SampleCorpus.SEED);
+            buyer = new BuyerAgent(markov, RESERVATION, TARGET);
+        }
+
+        sellerPrices = new double[MAX_TURNS];
+        sellerMessages = new String[MAX_TURNS];
+        double price = ASKING;
+        for (int i = 0; i < MAX_TURNS; i++) {
+            price = Math.max(RESERVATION - 20, price - (price - TARGET) * 0.12);
+            sellerPrices[i] = Math.round(price);
+            sellerMessages[i] = "I can't go that low. $" + (long) sellerPrices[i] + " is the lowest.";
+        }
+        startNegotiation();
+    }
+
+    private void startNegotiation() {
+        buyer.reset(RESERVATION, TARGET);
+        buyer.setSeed(SampleCorpus.SEED + negotiation++);
+        buyer.setItemContext("bike");
+        buyer.makeInitialOffer();
+        turn = 0;
+    }
+
+    @Benchmark
+    public String respondToSeller() {
+        if (turn == MAX_TURNS || buyer.hasWalkedAway() || buyer.isDealReached()) {
+            startNegotiation();
+        }
+        String reply = buyer.respondToSeller(sellerMessages[turn], sellerPrices[turn]);
+        turn++;
+        return reply;
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import data.DatasetParser;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.DialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Latency of DialogueGenerator.generate for each generator and intent.
+ *
+ * Prices and seller messages cycle through a fixed-seed sample, so every run sees the same inputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+    private static final String[] SELLER_MESSAGES = {
+        "Hi, yes it is available. I'm asking $450.",
+        "I can't go that low. $380 is the lowest.",
+        "How about $320? It's in great condition.",
+        "No, that's too low. I need at least $300.",
+        "I could do $275 if you pick it up.",
+        "Firm at $260."
+    };
+
+    @Param({"markov", "contextual"})
+    public String generator;
+
+    @Param({"OFFER", "COUNTER", "REJECT", "ACCEPT"})
+    public String intent;
+
+    private DialogueGenerator gen;
+    private double[] prices;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<DatasetParser.NegotiationExample> examples = SampleCorpus.examples();
+        if ("contextual".equals(generator)) {
+            ContextualDialogueGenerator contextual = new ContextualDialogueGenerator(examples);
+            contextual.setSeed(SampleCorpus.SEED);
+            gen = contextual;
+        } else {
+            MarkovDialogueGenerator markov = new MarkovDialogueGenerator(examples, 3);
+            markov.setSeed(SampleCorpus.SEED);
+            gen = markov;
+        }
+        gen.setItemContext("bike");
+
+        Random random = new Random(SampleCorpus.SEED);
+        prices = new double[1024];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 100 + Math.round(random.nextDouble() * 40000) / 100.0;
+        }
+    }
+
+    @Benchmark
+    public String generate() {
+        int i = next++ & (prices.length - 1);
+        return gen.generate(intent, prices[i], SELLER_MESSAGES[i % SELLER_MESSAGES.length]);
+    }
+}
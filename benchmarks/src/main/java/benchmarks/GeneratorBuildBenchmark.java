@@ -0,0 +1,37 @@
+package benchmarks;
+
+import data.DatasetParser;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Construction time of both generators from already parsed examples, so parsing is not counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBuildBenchmark {
+
+    private List<DatasetParser.NegotiationExample> examples;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        examples = SampleCorpus.examples();
+    }
+
+    @Benchmark
+    public MarkovDialogueGenerator buildMarkov() {
+        return new MarkovDialogueGenerator(examples, 3);
+    }
+
+    @Benchmark
+    public ContextualDialogueGenerator buildContextual() {
+        return new ContextualDialogueGenerator(examples);
+    }
+}
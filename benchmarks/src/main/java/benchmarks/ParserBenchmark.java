@@ -0,0 +1,30 @@
+package benchmarks;
+
+import data.DatasetParser;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of DatasetParser.parseBuyerExamples over the bundled sample corpus, file read included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private String corpusPath;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpusPath = SampleCorpus.path();
+    }
+
+    @Benchmark
+    public List<DatasetParser.NegotiationExample> parseBuyerExamples() throws Exception {
+        return new DatasetParser().parseBuyerExamples(corpusPath);
+    }
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import agents.BuyerAgent;
+import agents.LinearQFunction;
+import agents.QFunction;
+import agents.QTable;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Q-learning update throughput for the tabular and linear Q-functions.
+ *
+ * Transitions are drawn once from a fixed seed over realistic bucket keys and feature vectors.
+ * The function is shared by all benchmark threads, so running with -t N measures contended updates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QTableUpdateBenchmark {
+
+    private static final int TRANSITIONS = 4096;
+    private static final int ACTIONS = 3;
+
+    @Param({"tabular", "linear"})
+    public String function;
+
+    private QFunction qFunction;
+    private long[] keys;
+    private long[] nextKeys;
+    private double[][] features;
+    private double[][] nextFeatures;
+    private int[] actions;
+    private double[] rewards;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        qFunction = "linear".equals(function) ? new LinearQFunction(ACTIONS) : new QTable(ACTIONS);
+
+        Random random = new Random(SampleCorpus.SEED);
+        keys = new long[TRANSITIONS];
+        nextKeys = new long[TRANSITIONS];
+        features = new double[TRANSITIONS][];
+        nextFeatures = new double[TRANSITIONS][];
+        actions = new int[TRANSITIONS];
+        rewards = new double[TRANSITIONS];
+        for (int i = 0; i < TRANSITIONS; i++) {
+            int round = 1 + random.nextInt(15);
+            int rejects = random.nextInt(4);
+            double offer = 100 + random.nextDouble() * 300;
+            double sellerPrice = offer + random.nextDouble() * 200;
+            keys[i] = BuyerAgent.bucketState(round, sellerPrice, offer, rejects);
+            nextKeys[i] = BuyerAgent.bucketState(round + 1, sellerPrice * 0.95, offer * 1.05, rejects);
+            features[i] = randomFeatures(random);
+            nextFeatures[i] = randomFeatures(random);
+            actions[i] = random.nextInt(ACTIONS);
+            rewards[i] = random.nextGaussian();
+            qFunction.ensure(keys[i]);
+        }
+    }
+
+    private static double[] randomFeatures(Random random) {
+        double[] f = new double[LinearQFunction.FEATURES];
+        for (int k = 0; k < f.length; k++) {
+            f[k] = random.nextDouble();
+        }
+        return f;
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public double update(Cursor cursor) {
+        int i = cursor.next++ & (TRANSITIONS - 1);
+        return qFunction.update(keys[i], features[i], actions[i], rewards[i],
+                                nextKeys[i], nextFeatures[i], 0.1, 0.9);
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import data.DatasetParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * The bundled sample corpus (160 synthetic dialogues in the CraigslistBargains format).
+ *
+ * DatasetParser reads from a path, so the resource is copied out of the jar once per JVM.
+ */
+final class SampleCorpus {
+
+    static final String RESOURCE = "/sample_corpus.json";
+    static final long SEED = 42L;
+
+    private static Path path;
+
+    private SampleCorpus() {
+    }
+
+    static synchronized String path() {
+        if (path == null) {
+            try (InputStream in = SampleCorpus.class.getResourceAsStream(RESOURCE)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing resource " + RESOURCE);
+                }
+                Path file = Files.createTempFile("sample_corpus", ".json");
+                file.toFile().deleteOnExit();
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                path = file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return path.toString();
+    }
+
+    static List<DatasetParser.NegotiationExample> examples() throws Exception {
+        return new DatasetParser().parseBuyerExamples(path());
+    }
+}
@@ -1,20 +1,19 @@
 import agents.BuyerAgent;
+import data.DatasetParser;
 import dialogue.DialogueGenerator;
 import dialogue.ContextualDialogueGenerator;
 import dialogue.MarkovDialogueGenerator;
+import session.NegotiationSession;
+import util.Log;
+import util.PriceFormat;
 import java.util.*;
 import java.io.*;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class InteractiveNegotiation {
     
     private static BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-    private static Pattern pricePattern = Pattern.compile("\\$\\s*(\\d+(?:\\.\\d{1,2})?)|" +
-                                                          "(\\d+(?:\\.\\d{1,2})?)\\s*(?:dollars?|bucks?|usd)");
-    private static final String[] acceptKeywords = {
-        "deal", "accepted", "accept", "agreed", "sounds good", "works", "ok", "okay", "sure"
-    };
     
     public static void main(String[] args) {
         try {
@@ -22,6 +21,22 @@ public class InteractiveNegotiation {
             System.out.println();
             
             String datasetPath = "data/craigslist_bargains/train.json";
+            String qTablePath = "q_table.bin";
+            
+            // Parse the corpus once and build both generators in the background while the user types.
+            // Their log lines are held back until the prompts are done.
+            Log.hold();
+            CompletableFuture<List<DatasetParser.NegotiationExample>> examples = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new DatasetParser().parseBuyerExamples(datasetPath);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            CompletableFuture<DialogueGenerator> markov =
+                examples.thenApplyAsync(parsed -> new MarkovDialogueGenerator(parsed, 3));
+            CompletableFuture<DialogueGenerator> contextual =
+                examples.thenApplyAsync(parsed -> new ContextualDialogueGenerator(parsed));
             
             System.out.print("Enter item name: ");
             System.out.flush();
@@ -73,7 +88,7 @@ public class InteractiveNegotiation {
             
             System.out.println("\n=== Negotiation Started ===");
             System.out.println("Item: " + itemName);
-            System.out.println("Your asking price: $" + String.format("%.2f", askingPrice));
+            System.out.println("Your asking price: " + PriceFormat.dollars(askingPrice));
             System.out.println("\nTip: Type 'quit' or 'exit' to end negotiation");
             System.out.println("Disclaimer: Buyer responses are auto-generated and may contain artifacts or off-topic phrases. Deals are marked heuristically when price gaps narrow—treat them as approximations.");
             System.out.println("----------------------------------------\n");
@@ -81,32 +96,32 @@ public class InteractiveNegotiation {
             DialogueGenerator generator;
             String generatorName;
             if (genChoice == 2) {
-                generator = new ContextualDialogueGenerator(datasetPath);
+                generator = awaitGenerator(contextual);
                 generatorName = "Contextual TF-IDF";
             } else {
-                generator = new MarkovDialogueGenerator(datasetPath, 3);
+                generator = awaitGenerator(markov);
                 generatorName = "Markov";
             }
+            Log.flush();
             
-            BuyerAgent buyer = new BuyerAgent(generator, buyerReservation, buyerTarget);
+            BuyerAgent buyer = new BuyerAgent(generator, buyerReservation, buyerTarget, qTablePath);
             buyer.setItemContext(itemName);
             
             System.out.println("Q-Learning enabled:");
             System.out.println("  Exploration rate: " + buyer.getEpsilon());
             System.out.println("  Agent will learn from this negotiation");
+            System.out.println("  States loaded from " + qTablePath + ": " + buyer.getQTableSize());
             System.out.println("  Item context: " + itemName);
             System.out.println("  Dialogue generator: " + generatorName);
             System.out.println();
             
-            String buyerMessage = buyer.makeInitialOffer();
+            NegotiationSession session = new NegotiationSession(buyer, askingPrice);
+            String buyerMessage = session.open();
             System.out.println("Buyer: " + buyerMessage);
-            System.out.println("Buyer's offer: $" + String.format("%.2f", buyer.getCurrentOffer()));
+            System.out.println("Buyer's offer: " + PriceFormat.dollars(buyer.getCurrentOffer()));
             System.out.println();
             
-            double currentSellerPrice = askingPrice;
-            int round = 1;
-            
-            while (round < 20) {
+            while (!session.isFinished()) {
                 System.out.print("You (Seller): ");
                 String sellerMessage = reader.readLine().trim();
                 
@@ -115,159 +130,67 @@ public class InteractiveNegotiation {
                     continue;
                 }
                 
-                if (sellerMessage.toLowerCase().equals("quit") || sellerMessage.toLowerCase().equals("exit")) {
-                    System.out.println("\nNegotiation ended by seller.");
+                NegotiationSession.TurnResult result = session.turn(sellerMessage);
+                if (result.outcome == NegotiationSession.Outcome.SELLER_QUIT) {
+                    System.out.println("\n" + result.outcomeDetail);
                     break;
                 }
                 
-                double inferredPrice = inferPriceFromMessage(sellerMessage);
-                boolean isRejecting = isRejectingMessage(sellerMessage);
-                boolean wantsHigher = wantsHigherPrice(sellerMessage);
-                boolean isAccepting = isAcceptingMessage(sellerMessage);
-                
-                if (inferredPrice > 0) {
-                    currentSellerPrice = inferredPrice;
-                    System.out.println("  [Inferred price: $" + String.format("%.2f", currentSellerPrice) + "]");
-                } else if (isAccepting && buyer.getCurrentOffer() > 0) {
-                    // Seller typed "deal/ok/accepted" without a price: treat as accepting the buyer's current offer.
-                    currentSellerPrice = buyer.getCurrentOffer();
-                    System.out.println("  [Seller accepts buyer offer: $" + String.format("%.2f", currentSellerPrice) + "]");
+                System.out.println("  [" + result.priceNote + "]");
+                if (result.buyerMessage == null) {
+                    // Seller accepted the standing offer; the buyer has nothing more to say.
                     System.out.println("\n=== Deal Reached! ===");
-                    System.out.println("Agreed price: $" + String.format("%.2f", currentSellerPrice));
+                    System.out.println(result.outcomeDetail);
                     break;
-                } else if (wantsHigher && !isRejecting) {
-                    System.out.println("  [Seller wants a higher price: keeping price $" + String.format("%.2f", currentSellerPrice) + "]");
-                } else if (isRejecting) {
-                    System.out.println("  [Keeping price: $" + String.format("%.2f", currentSellerPrice) + "]");
-                } else {
-                    System.out.println("  [Keeping price: $" + String.format("%.2f", currentSellerPrice) + "]");
                 }
                 
                 System.out.println();
-                
-                String buyerResponse = buyer.respondToSeller(sellerMessage, currentSellerPrice);
-                
-                System.out.println("Buyer: " + buyerResponse);
-                System.out.println("Buyer's offer: $" + String.format("%.2f", buyer.getCurrentOffer()));
-                
-                double priceGap = Math.abs(buyer.getCurrentOffer() - currentSellerPrice);
-                System.out.println("Round: " + buyer.getState().getRound() + 
-                                 " | Price gap: $" + String.format("%.2f", priceGap) +
+                System.out.println("Buyer: " + result.buyerMessage);
+                System.out.println("Buyer's offer: " + PriceFormat.dollars(result.buyerOffer));
+                System.out.println("Round: " + result.round + 
+                                 " | Price gap: " + PriceFormat.dollars(result.priceGap) +
                                  " | Exploration: " + String.format("%.1f%%", buyer.getEpsilon() * 100));
 
-                if (buyer.hasWalkedAway()) {
+                if (result.outcome == NegotiationSession.Outcome.WALKED_AWAY) {
                     System.out.println("\n=== Negotiation Ended ===");
-                    System.out.println("Buyer walked away.");
-                    break;
-                }
-
-                if (buyer.getState().isDealReached()) {
+                    System.out.println(result.outcomeDetail);
+                } else if (result.outcome == NegotiationSession.Outcome.DEAL) {
                     System.out.println("\n=== Deal Reached! ===");
-                    System.out.println("Agreed price: $" + String.format("%.2f", currentSellerPrice));
-                    break;
-                }
-                
-                if (buyer.getState().getOpponentLastOffer() <= buyer.getReservationPrice() && 
-                    buyer.getState().getOpponentLastOffer() > 0) {
-                    System.out.println("\n=== Deal Reached! ===");
-                    System.out.println("Buyer accepts your price: $" + String.format("%.2f", currentSellerPrice));
-                    break;
-                }
-                
-                if (buyerResponse.toLowerCase().contains("deal") && 
-                    (buyerResponse.toLowerCase().contains("accept") || 
-                     buyerResponse.toLowerCase().contains("agreed"))) {
-                    System.out.println("\n=== Deal Reached! ===");
-                    System.out.println("Buyer accepts: $" + String.format("%.2f", currentSellerPrice));
-                    break;
-                }
-                
-                if (buyer.getState().getRound() > 15) {
-                    System.out.println("\nNegotiation ended after " + buyer.getState().getRound() + " rounds.");
-                    break;
+                    System.out.println(result.outcomeDetail);
+                } else if (result.outcomeDetail != null) {
+                    System.out.println("\n" + result.outcomeDetail);
+                } else {
+                    System.out.println();
                 }
-                
-                System.out.println();
-                round++;
             }
             
             System.out.println("\n=== Negotiation Summary ===");
             System.out.println("Total rounds: " + buyer.getState().getRound());
-            System.out.println("Final seller price: $" + String.format("%.2f", currentSellerPrice));
-            System.out.println("Final buyer offer: $" + String.format("%.2f", buyer.getCurrentOffer()));
+            System.out.println("Final seller price: " + PriceFormat.dollars(session.getCurrentSellerPrice()));
+            System.out.println("Final buyer offer: " + PriceFormat.dollars(buyer.getCurrentOffer()));
             System.out.println("\nOffer history:");
             List<Double> history = buyer.getOfferHistory();
             for (int i = 0; i < history.size(); i++) {
-                System.out.println("  Round " + (i+1) + ": $" + String.format("%.2f", history.get(i)));
+                System.out.println("  Round " + (i+1) + ": " + PriceFormat.dollars(history.get(i)));
             }
             
-            buyer.saveQTable("q_table.txt");
+            buyer.saveQTable(qTablePath);
+            Log.flush();
             
         } catch (Exception e) {
+            // Fatal errors go to stderr, not the log (stdout or haggle.log.file); queued lines come out first.
+            Log.flush();
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
-    private static double inferPriceFromMessage(String message) {
-        Matcher matcher = pricePattern.matcher(message.toLowerCase());
-        if (matcher.find()) {
-            try {
-                String priceStr = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
-                return Double.parseDouble(priceStr);
-            } catch (NumberFormatException e) {
-                return 0.0;
-            }
-        }
-        return 0.0;
-    }
-    
-    private static boolean isRejectingMessage(String message) {
-        String lower = message.toLowerCase();
-        
-        String[] rejectKeywords = {
-            "no", "nope", "can't", "cannot", "won't", "wouldn't",
-            "too low", "too high", "impossible", "refuse", 
-            "not accepting", "not interested", "pass"
-        };
-        
-        for (String keyword : rejectKeywords) {
-            if (lower.contains(keyword)) {
-                return true;
-            }
-        }
-        
-        if (lower.contains("deal") && (lower.contains("no") || lower.contains("not"))) {
-            return true;
-        }
-        
-        return false;
-    }
-    
-    private static boolean wantsHigherPrice(String message) {
-        String lower = message.toLowerCase();
-        
-        String[] higherKeywords = {
-            "too little", "too small", "too low", "need more", 
-            "want more", "need higher", "want higher", "more money",
-            "increase", "raise", "go up", "bump up"
-        };
-        
-        for (String keyword : higherKeywords) {
-            if (lower.contains(keyword)) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-
-    private static boolean isAcceptingMessage(String message) {
-        String lower = message.toLowerCase();
-        for (String keyword : acceptKeywords) {
-            if (lower.contains(keyword)) return true;
+    private static DialogueGenerator awaitGenerator(CompletableFuture<DialogueGenerator> pending) throws Exception {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
         }
-        return false;
     }
 }
-
@@ -2,25 +2,59 @@ package agents;
 
 import dialogue.DialogueGenerator;
 import dialogue.MarkovDialogueGenerator;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Stage;
 import models.NegotiationState;
+import util.Log;
+import util.PriceFormat;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class BuyerAgent {
     
     private DialogueGenerator dialogueGen;
+    private String itemName;
     private double reservationPrice;
     private double targetPrice;
     private double currentOffer;
     private NegotiationState state;
     private Random random;
-    private List<Double> offerHistory;
-    private Map<String, double[]> qTable;
+    private QFunction qFunction;
+    // Reused feature buffers so function-approximation policies add no per-turn garbage.
+    private final double[] stateFeatures = new double[NegotiationState.FEATURE_COUNT];
+    private final double[] nextStateFeatures = new double[NegotiationState.FEATURE_COUNT];
+    private final double[] previousFeatures = new double[NegotiationState.FEATURE_COUNT];
     private double alpha = 0.1;
     private double gamma = 0.95;
     private double epsilon = 0.2;
     private static final String[] ACTIONS = {"COUNTER", "REJECT", "ACCEPT"};
+    public static final String WALK_AWAY = "WALK_AWAY";
+    private static final long NO_STATE = -1L;
+    // Terminal reward for a walk-away or a negotiation that runs out of rounds.
+    private static final double NO_DEAL_REWARD = -5.0;
+
+    // Canned lines as {before price, after price}; only the chosen one is rendered.
+    private static final String[][] ACCEPT_LINES = {
+        {"Yeah, I can do $", ". Deal."},
+        {"Okay deal — $", " works for me."},
+        {"I agree to $", "."},
+        {"Sounds good, I'll pay $", "."},
+        {"Deal! I'll take it for $", "."}
+    };
+    private static final String[][] STUBBORN_LINES = {
+        {"I really can't go higher than $", ". That's my absolute max."},
+        {"I'm being serious - $", " is the best I can do."},
+        {"I've got another seller offering it for less. $", " is fair."},
+        {"My budget is $", ". I can't change that."}
+    };
     private int consecutiveRejects = 0;
-    private String previousStateKey = null;
+    private long previousStateKey = NO_STATE;
     private int previousAction = -1;
     private enum Tactic {
         HARD_BALL,
@@ -29,6 +63,13 @@ public class BuyerAgent {
         DEFAULT
     }
     private Tactic currentTactic;
+    // When set, every non-accepting turn uses this tactic instead of the one pickTactic would choose.
+    private Tactic fixedTactic = null;
+    private ReplayBuffer replayBuffer = null;
+    private int[] replayBatch = null;
+    private final double[] replayFeatures = new double[NegotiationState.FEATURE_COUNT];
+    private final double[] replayNextFeatures = new double[NegotiationState.FEATURE_COUNT];
+    private boolean prioritizedReplay = false;
     private boolean walkedAway = false;
     private String walkAwayMessage = null;
 
@@ -37,29 +78,59 @@ public class BuyerAgent {
     private int hardWalkAwayRound = 13;
     private int maxConsecutiveRejectsBeforeWalkAway = 4;
 
+    // Concession curve for counters (see decidePrice): rounds until the floor reaches the
+    // reservation price, and the share of the remaining gap conceded per counter.
+    private double concessionRounds = 8.0;
+    private double concessionGapShare = 0.3;
+
+    // Optional latency budget for dialogue generation (see setRenderDeadline).
+    private ExecutorService renderExecutor = null;
+    private long renderDeadlineNanos = 0;
+    private long renderCount = 0;
+    private long renderFallbacks = 0;
+    // Deadline-bound generation runs on its own session so a late task never shares state with the
+    // turn loop; the session is resynced before each render and left alone while lateRender runs.
+    private DialogueGenerator renderSession = null;
+    private String renderSessionItem = null;
+    private NegotiationState renderState = null;
+    private Future<String> lateRender = null;
+
+    // When attached, every turn acts on the publisher's current snapshot instead of learning locally.
+    private PolicyPublisher policyPublisher = null;
+    private long appliedPolicyVersion = -1;
+
     public BuyerAgent(String datasetPath, double reservationPrice, double targetPrice) throws Exception {
         this.dialogueGen = new MarkovDialogueGenerator(datasetPath, 3);
         this.reservationPrice = reservationPrice;
         this.targetPrice = targetPrice;
         this.currentOffer = targetPrice;
         this.random = new Random();
-        this.offerHistory = new ArrayList<>();
-        this.qTable = new HashMap<>();
-        this.state = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, offerHistory);
+        this.qFunction = new QTable(ACTIONS.length);
+        this.state = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, null);
     }
 
+    // dialogueGen may be null when the agent is only driven through decideTurn (headless training).
     public BuyerAgent(DialogueGenerator dialogueGen, double reservationPrice, double targetPrice) {
         this.dialogueGen = dialogueGen;
         this.reservationPrice = reservationPrice;
         this.targetPrice = targetPrice;
         this.currentOffer = targetPrice;
         this.random = new Random();
-        this.offerHistory = new ArrayList<>();
-        this.qTable = new HashMap<>();
-        this.state = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, offerHistory);
+        this.qFunction = new QTable(ACTIONS.length);
+        this.state = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, null);
+    }
+
+    // Warm start: picks up a previously saved Q-table if one exists at qTablePath.
+    public BuyerAgent(DialogueGenerator dialogueGen, double reservationPrice, double targetPrice,
+                      String qTablePath) throws IOException {
+        this(dialogueGen, reservationPrice, targetPrice);
+        if (qTablePath != null && new File(qTablePath).isFile()) {
+            loadQTable(qTablePath);
+        }
     }
     
     public void setItemContext(String itemName) {
+        this.itemName = itemName;
         dialogueGen.setItemContext(itemName);
     }
 
@@ -79,6 +150,10 @@ public class BuyerAgent {
             return Tactic.OPPORTUNISTIC;
         }
         
+        if (fixedTactic != null) {
+            return fixedTactic;
+        }
+        
         if (intent.equals("REJECT")) {
             if (gap > sellerPrice * 0.5) {
                 return Tactic.HARD_BALL;
@@ -111,54 +186,114 @@ public class BuyerAgent {
         return Tactic.DEFAULT;
     }
 
-    private String getStateKey(double sellerPrice) {
+    private long getStateKey(double sellerPrice) {
+        return bucketState(state.getRound(), sellerPrice, currentOffer, consecutiveRejects);
+    }
+
+    // State bucketing shared with the offline trainers: round (capped at 10), $10 gap buckets, rejects (capped at 5).
+    public static long bucketState(int round, double sellerPrice, double currentOffer, int consecutiveRejects) {
         double priceGap = Math.abs(sellerPrice - currentOffer);
-        int roundBucket = Math.min(state.getRound(), 10);
+        int roundBucket = Math.min(round, 10);
         int gapBucket = (int) Math.floor(priceGap / 10.0);
         int rejectsBucket = Math.min(consecutiveRejects, 5);
-        return roundBucket + "_" + gapBucket + "_" + rejectsBucket;
+        return QTable.stateKey(roundBucket, gapBucket, rejectsBucket);
     }
 
-    private int chooseAction(String stateKey) {
-        if (!qTable.containsKey(stateKey)) {
-            qTable.put(stateKey, new double[]{0.0, 0.0, 0.0});
-        }
+    private int chooseAction(long stateKey, double[] features) {
+        qFunction.ensure(stateKey);
 
         if (random.nextDouble() < epsilon) {
             return random.nextInt(3);
         }
 
-        double[] qValues = qTable.get(stateKey);
-        return argmax(qValues);
-    }
-    
-    private int argmax(double[] values) {
-        int maxIdx = 0;
-        for (int i = 1; i < values.length; i++) {
-            if (values[i] > values[maxIdx]) {
-                maxIdx = i;
-            }
-        }
-        return maxIdx;
+        return qFunction.argmax(stateKey, features);
     }
 
     private String actionToIntent(int action) {
         return ACTIONS[action];
     } 
 
-    private void updateQTable(String stateKey, int action, double reward, String nextStateKey) {
-        if (!qTable.containsKey(stateKey)) {
-            qTable.put(stateKey, new double[]{0.0, 0.0, 0.0});
+    public static int actionIndex(String intent) {
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (ACTIONS[i].equals(intent)) return i;
         }
-        
-        double[] qValues = qTable.get(stateKey);
-        double[] nextQValues = qTable.getOrDefault(nextStateKey, new double[]{0.0, 0.0, 0.0});
+        return -1;
+    }
 
-        double bestNextQ = Math.max(nextQValues[0], Math.max(nextQValues[1], nextQValues[2]));
-        qValues[action] = (1 - alpha) * qValues[action] +
-                        alpha * (reward + gamma * bestNextQ);
+    // Reward shaping for one buyer decision; shared with the offline trainers.
+    public static double turnReward(String intent, double sellerPrice, double currentOffer, double reservationPrice) {
+        if (intent.equals("ACCEPT")) {
+            if (sellerPrice <= reservationPrice) {
+                return (reservationPrice - sellerPrice) * 2.0;
+            }
+            return -10.0;
+        } else if (intent.equals("REJECT")) {
+            return -2.0;
+        }
+        double gapReduction = Math.abs(sellerPrice - currentOffer);
+        return -gapReduction / 10.0;
+    }
+
+    /**
+     * Closes the episode for learning. decideTurn only updates a transition on the following call,
+     * so the last action would otherwise never see how the negotiation ended: it gets the deal
+     * reward at the agreed price (or NO_DEAL_REWARD) with no bootstrap, as a terminal transition.
+     * No-op when running on a published policy or before the first action.
+     */
+    public void endNegotiation(boolean deal, double price) {
+        if (policyPublisher != null || previousStateKey == NO_STATE || previousAction < 0) {
+            return;
+        }
+        double reward = deal ? turnReward("ACCEPT", price, currentOffer, reservationPrice) : NO_DEAL_REWARD;
+        updateQTable(previousStateKey, previousFeatures, previousAction, reward,
+                     previousStateKey, previousFeatures, true);
+        previousStateKey = NO_STATE;
+        previousAction = -1;
+    }
+
+    // terminal: the transition ended the episode, so it is learned (and replayed) without bootstrapping.
+    private void updateQTable(long stateKey, double[] features, int action, double reward,
+                              long nextStateKey, double[] nextFeatures, boolean terminal) {
+        qFunction.update(stateKey, features, action, reward, nextStateKey, nextFeatures, alpha, terminal ? 0.0 : gamma);
 
-        qTable.put(stateKey, qValues);
+        if (replayBuffer != null) {
+            replayBuffer.add(stateKey, features, action, reward, nextStateKey, nextFeatures, terminal);
+            replayMiniBatch();
+        }
+    }
+
+    private void replayMiniBatch() {
+        int n = prioritizedReplay
+            ? replayBuffer.samplePrioritized(random, replayBatch, replayBatch.length)
+            : replayBuffer.sampleUniform(random, replayBatch, replayBatch.length);
+        for (int i = 0; i < n; i++) {
+            int slot = replayBatch[i];
+            replayBuffer.copyFeatures(slot, replayFeatures);
+            replayBuffer.copyNextFeatures(slot, replayNextFeatures);
+            double tdError = qFunction.update(replayBuffer.state(slot), replayFeatures, replayBuffer.action(slot),
+                                              replayBuffer.reward(slot), replayBuffer.nextState(slot),
+                                              replayNextFeatures, alpha,
+                                              replayBuffer.isTerminal(slot) ? 0.0 : gamma);
+            if (prioritizedReplay) {
+                replayBuffer.updatePriority(slot, tdError);
+            }
+        }
+    }
+
+    // After every online update, also replay batchSize stored transitions (uniformly or by TD error).
+    public void enableExperienceReplay(int capacity, int batchSize, boolean prioritized) {
+        this.replayBuffer = new ReplayBuffer(capacity, 0.6, NegotiationState.FEATURE_COUNT);
+        this.replayBatch = new int[batchSize];
+        this.prioritizedReplay = prioritized;
+    }
+
+    public void disableExperienceReplay() {
+        this.replayBuffer = null;
+        this.replayBatch = null;
+    }
+
+    public ReplayBuffer getReplayBuffer() {
+        return replayBuffer;
     }
     
     public String respondToSeller(String sellerMessage, double sellerPrice) {
@@ -171,9 +306,45 @@ public class BuyerAgent {
             return generateTacticalResponse("ACCEPT", sellerPrice, sellerMessage, Tactic.OPPORTUNISTIC);
         }
 
-        String currentStateKey = getStateKey(sellerPrice);
+        long start = Metrics.start();
+        String intent = decideTurn(sellerPrice);
+        Metrics.record(Stage.ACTION_SELECTION, start);
+        if (WALK_AWAY.equals(intent)) {
+            Metrics.record(Stage.TURN, start);
+            return walkAwayMessage;
+        }
+        
+        dialogueGen.updateContext(state, sellerMessage);
+        
+        String response = generateTacticalResponse(intent, currentOffer, sellerMessage, currentTactic);
+        Metrics.record(Stage.TURN, start);
+        
+        return response;
+    }
+
+    /**
+     * Pricing and Q-learning half of a turn, without any dialogue generation.
+     * Returns ACCEPT, COUNTER or REJECT, or WALK_AWAY when the buyer ends the negotiation.
+     */
+    public String decideTurn(double sellerPrice) {
+        if (walkedAway) {
+            return WALK_AWAY;
+        }
+        if (state != null && state.isDealReached()) {
+            return "ACCEPT";
+        }
+
+        // Pick up a newly published policy at the start of the turn; the read never blocks.
+        PolicySnapshot policy = policyPublisher != null ? policyPublisher.current() : null;
+        if (policy != null && policy.getVersion() != appliedPolicyVersion) {
+            applyPolicy(policy);
+        }
+
+        long currentStateKey = getStateKey(sellerPrice);
+        NegotiationState.fillFeatureVector(stateFeatures, state.getRound(), currentOffer, reservationPrice,
+                                           targetPrice, sellerPrice, consecutiveRejects, false);
         
-        int action = chooseAction(currentStateKey);
+        int action = chooseAction(currentStateKey, stateFeatures);
         String intent = actionToIntent(action);
         
         if (intent.equals("ACCEPT") && sellerPrice > reservationPrice) {
@@ -186,20 +357,10 @@ public class BuyerAgent {
             action = 2;
         }
         
-        double reward = 0.0;
-        if (intent.equals("ACCEPT")) {
-            if (sellerPrice <= reservationPrice) {
-                reward = (reservationPrice - sellerPrice) * 2.0;
-            } else {
-                reward = -10.0;
-            }
-            consecutiveRejects = 0;
-        } else if (intent.equals("REJECT")) {
-            reward = -2.0;
+        double reward = turnReward(intent, sellerPrice, currentOffer, reservationPrice);
+        if (intent.equals("REJECT")) {
             consecutiveRejects++;
         } else {
-            double gapReduction = Math.abs(sellerPrice - currentOffer);
-            reward = -gapReduction / 10.0;
             consecutiveRejects = 0;
         }
         
@@ -225,67 +386,49 @@ public class BuyerAgent {
                 projectedRound >= hardWalkAwayRound)) {
             walkedAway = true;
             walkAwayMessage = "I don't think we're going to agree. I'll pass. Thanks for your time.";
-            return walkAwayMessage;
+            return WALK_AWAY;
         }
         
         currentOffer = offerPrice;
-        offerHistory.add(offerPrice);
         
-        state = new NegotiationState(
-            state.getRound() + 1,
-            currentOffer,
-            reservationPrice,
-            targetPrice,
-            sellerPrice,
-            offerHistory
-        );
+        // Advance the state in place rather than rebuilding it (and copying the history) every turn.
+        state.addOffer(offerPrice);
+        state.update(state.getRound() + 1, currentOffer, sellerPrice);
         state.setConsecutiveRejects(consecutiveRejects);
         state.setDealReached("ACCEPT".equals(intent));
         
-        String nextStateKey = getStateKey(sellerPrice);
+        long nextStateKey = getStateKey(sellerPrice);
+        state.toFeatureVector(nextStateFeatures);
         
-        if (previousStateKey != null && previousAction >= 0) {
-            updateQTable(previousStateKey, previousAction, reward, nextStateKey);
+        // Published snapshots are frozen; learning happens in the background trainer.
+        if (policy == null && previousStateKey != NO_STATE && previousAction >= 0) {
+            updateQTable(previousStateKey, previousFeatures, previousAction, reward, nextStateKey, nextStateFeatures, false);
         }
         
         previousStateKey = currentStateKey;
+        System.arraycopy(stateFeatures, 0, previousFeatures, 0, stateFeatures.length);
         previousAction = action;
         
-        dialogueGen.updateContext(state, sellerMessage);
-        
-        String response = generateTacticalResponse(intent, offerPrice, sellerMessage, currentTactic);
-        
-        return response;
+        return intent;
     }
     
     private String generateTacticalResponse(String intent, double price, String sellerMessage, Tactic tactic) {
         // If the seller price is acceptable, always return a clear acceptance.
         // This avoids confusing "ACCEPT" turns that contain unrelated seed text.
         if ("ACCEPT".equals(intent)) {
-            String[] acceptResponses = {
-                "Yeah, I can do $" + String.format("%.2f", price) + ". Deal.",
-                "Okay deal — $" + String.format("%.2f", price) + " works for me.",
-                "I agree to $" + String.format("%.2f", price) + ".",
-                "Sounds good, I'll pay $" + String.format("%.2f", price) + ".",
-                "Deal! I'll take it for $" + String.format("%.2f", price) + "."
-            };
-            String response = acceptResponses[random.nextInt(acceptResponses.length)];
+            String response = cannedLine(ACCEPT_LINES[random.nextInt(ACCEPT_LINES.length)], price);
             if (currentTactic == Tactic.OPPORTUNISTIC && !response.toLowerCase().contains("cash")) {
                 response = addTacticalModifier(response, "I can pay cash right now.");
             }
             return response;
         }
 
-        String baseResponse = dialogueGen.generate(intent, price, sellerMessage);
+        long renderStart = Metrics.start();
+        String baseResponse = render(intent, price, sellerMessage);
+        Metrics.record(Stage.RENDER, renderStart);
         
         if (consecutiveRejects >= 3) {
-            String[] stubbornResponses = {
-                "I really can't go higher than $" + String.format("%.2f", price) + ". That's my absolute max.",
-                "I'm being serious - $" + String.format("%.2f", price) + " is the best I can do.",
-                "I've got another seller offering it for less. $" + String.format("%.2f", price) + " is fair.",
-                "My budget is $" + String.format("%.2f", price) + ". I can't change that."
-            };
-            return stubbornResponses[random.nextInt(stubbornResponses.length)];
+            return cannedLine(STUBBORN_LINES[random.nextInt(STUBBORN_LINES.length)], price);
         }
         
         switch (tactic) {
@@ -311,6 +454,91 @@ public class BuyerAgent {
         return baseResponse;
     }
     
+    private static String cannedLine(String[] line, double price) {
+        StringBuilder sb = new StringBuilder(line[0].length() + line[1].length() + 12);
+        sb.append(line[0]);
+        PriceFormat.appendTo(sb, price);
+        return sb.append(line[1]).toString();
+    }
+
+    /**
+     * Generates the dialogue text for an already decided intent and price. With a render
+     * deadline set, generation runs on the executor against a snapshot of the conversation,
+     * and the generator's fallback template is used if it does not finish in time, so a slow
+     * retrieval can't stall the turn. While a late generation is still running, later turns
+     * use the template without submitting another.
+     */
+    private String render(String intent, double price, String sellerMessage) {
+        renderCount++;
+        if (renderExecutor == null) {
+            return sellerMessage == null
+                ? dialogueGen.generate(intent, price)
+                : dialogueGen.generate(intent, price, sellerMessage);
+        }
+
+        if (lateRender != null && !lateRender.isDone()) {
+            return renderFallback(intent, price);
+        }
+        lateRender = null;
+
+        DialogueGenerator session = syncRenderSession();
+        Future<String> pending = renderExecutor.submit(() -> sellerMessage == null
+            ? session.generate(intent, price)
+            : session.generate(intent, price, sellerMessage));
+        try {
+            String text = pending.get(renderDeadlineNanos, TimeUnit.NANOSECONDS);
+            if (text != null) {
+                return text;
+            }
+        } catch (TimeoutException e) {
+            // Generators don't check for interrupts, so the task is not cancelled: it keeps the
+            // render session until it finishes (cancel would report it done while still running).
+            lateRender = pending;
+        } catch (ExecutionException e) {
+            // Fall through to the template.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return renderFallback(intent, price);
+    }
+
+    private String renderFallback(String intent, double price) {
+        renderFallbacks++;
+        Metrics.increment(Counter.RENDER_FALLBACKS);
+        return dialogueGen.getFallbackDialogue(intent, price);
+    }
+
+    // Brings the render session up to the agent's item, history and state; only called while no task holds it.
+    private DialogueGenerator syncRenderSession() {
+        if (renderSession == null) {
+            renderSession = dialogueGen.newSession();
+            renderSession.setItemContext(itemName);
+            renderSessionItem = itemName;
+            renderState = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, null);
+        } else if (!Objects.equals(renderSessionItem, itemName)) {
+            renderSession.setItemContext(itemName);
+            renderSessionItem = itemName;
+        }
+        renderState.copyFrom(state);
+        renderSession.restoreConversation(dialogueGen.getConversationHistory());
+        renderSession.updateContext(renderState, null);
+        return renderSession;
+    }
+
+    // Bounds each turn's text generation to deadlineMillis on the given executor (null disables).
+    public void setRenderDeadline(ExecutorService executor, long deadlineMillis) {
+        this.renderExecutor = executor;
+        this.renderDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    public long getRenderCount() {
+        return renderCount;
+    }
+
+    public long getRenderFallbacks() {
+        return renderFallbacks;
+    }
+    
     private String addTacticalModifier(String response, String modifier) {
         if (response.endsWith(".") || response.endsWith("!") || response.endsWith("?")) {
             return response.substring(0, response.length() - 1) + ". " + modifier;
@@ -319,14 +547,18 @@ public class BuyerAgent {
     }
     
     public String makeInitialOffer() {
-        currentOffer = targetPrice;
-        offerHistory.clear();
-        offerHistory.add(currentOffer);
-        
-        state = new NegotiationState(1, currentOffer, reservationPrice, targetPrice, 0.0, offerHistory);
+        startNegotiation();
         dialogueGen.updateContext(state, null);
         
-        return dialogueGen.generate("OFFER", currentOffer);
+        return render("OFFER", currentOffer, null);
+    }
+
+    // Opens at the target price without generating any text (used by headless training).
+    public void startNegotiation() {
+        currentOffer = targetPrice;
+        state.reset(reservationPrice, targetPrice);
+        state.addOffer(currentOffer);
+        state.update(1, currentOffer, 0.0);
     }
     
     private String decideIntent(double sellerPrice) {
@@ -357,13 +589,13 @@ public class BuyerAgent {
                     return Math.round((currentOffer + stubbornIncrease) * 100.0) / 100.0;
                 }
                 
-                double progressFactor = Math.min(1.0, state.getRound() / 8.0);
+                double progressFactor = Math.min(1.0, state.getRound() / concessionRounds);
                 double minOffer = targetPrice;
                 double maxOffer = reservationPrice;
                 
                 double baseCounter = minOffer + (maxOffer - minOffer) * progressFactor;
                 
-                double gapToBridge = (sellerPrice - currentOffer) * 0.3;
+                double gapToBridge = (sellerPrice - currentOffer) * concessionGapShare;
                 double newOffer = currentOffer + gapToBridge;
                 
                 newOffer = Math.max(newOffer, baseCounter);
@@ -391,6 +623,10 @@ public class BuyerAgent {
     public double getReservationPrice() {
         return reservationPrice;
     }
+
+    public double getTargetPrice() {
+        return targetPrice;
+    }
     
     public NegotiationState getState() {
         return state;
@@ -398,19 +634,263 @@ public class BuyerAgent {
     
     public void reset() {
         this.currentOffer = targetPrice;
-        this.offerHistory.clear();
         this.consecutiveRejects = 0;
-        this.previousStateKey = null;
+        this.previousStateKey = NO_STATE;
         this.previousAction = -1;
-        this.state = new NegotiationState(0, 0.0, reservationPrice, targetPrice, 0.0, offerHistory);
-        dialogueGen.resetConversation();
+        this.walkedAway = false;
+        this.walkAwayMessage = null;
+        this.state.reset(reservationPrice, targetPrice);
+        if (dialogueGen != null) {
+            dialogueGen.resetConversation();
+        }
+    }
+
+    // Starts a fresh negotiation with new limits while keeping everything learned so far.
+    public void reset(double reservationPrice, double targetPrice) {
+        this.reservationPrice = reservationPrice;
+        this.targetPrice = targetPrice;
+        reset();
+    }
+
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Writes the negotiation in progress: prices, offer history, learning bookkeeping for the
+     * pending update, walk-away status, item and the generator's conversation. The policy and
+     * tuning settings are not included; the restoring agent brings its own.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeDouble(reservationPrice);
+        out.writeDouble(targetPrice);
+        out.writeDouble(currentOffer);
+        out.writeInt(consecutiveRejects);
+        out.writeLong(previousStateKey);
+        out.writeInt(previousAction);
+        for (double f : previousFeatures) {
+            out.writeDouble(f);
+        }
+        out.writeByte(currentTactic == null ? -1 : currentTactic.ordinal());
+        out.writeBoolean(walkedAway);
+        writeString(out, walkAwayMessage);
+        writeString(out, itemName);
+        // Reseed so the original and the restored copy continue with the same random sequence.
+        long seed = random.nextLong();
+        random = new Random(seed);
+        out.writeLong(seed);
+
+        out.writeInt(state.getRound());
+        out.writeDouble(state.getLastOfferPrice());
+        out.writeDouble(state.getOpponentLastOffer());
+        out.writeInt(state.getConsecutiveRejects());
+        out.writeBoolean(state.isDealReached());
+        out.writeInt(state.getOfferCount());
+        for (int i = 0; i < state.getOfferCount(); i++) {
+            out.writeDouble(state.getOffer(i));
+        }
+
+        List<String> history = dialogueGen != null ? dialogueGen.getConversationHistory() : Collections.<String>emptyList();
+        out.writeInt(history.size());
+        for (String message : history) {
+            writeString(out, message);
+        }
+    }
+
+    public void readCheckpoint(DataInput in) throws IOException {
+        reservationPrice = in.readDouble();
+        targetPrice = in.readDouble();
+        currentOffer = in.readDouble();
+        consecutiveRejects = in.readInt();
+        previousStateKey = in.readLong();
+        previousAction = in.readInt();
+        for (int i = 0; i < previousFeatures.length; i++) {
+            previousFeatures[i] = in.readDouble();
+        }
+        int tactic = in.readByte();
+        currentTactic = tactic < 0 ? null : Tactic.values()[tactic];
+        walkedAway = in.readBoolean();
+        walkAwayMessage = readString(in);
+        String item = readString(in);
+        random = new Random(in.readLong());
+
+        int round = in.readInt();
+        double lastOffer = in.readDouble();
+        double opponentLastOffer = in.readDouble();
+        state.reset(reservationPrice, targetPrice);
+        state.setConsecutiveRejects(in.readInt());
+        state.setDealReached(in.readBoolean());
+        int offers = in.readInt();
+        for (int i = 0; i < offers; i++) {
+            state.addOffer(in.readDouble());
+        }
+        state.update(round, lastOffer, opponentLastOffer);
+
+        int messages = in.readInt();
+        List<String> history = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            history.add(readString(in));
+        }
+        if (dialogueGen != null) {
+            dialogueGen.resetConversation();
+            dialogueGen.restoreConversation(history);
+            dialogueGen.updateContext(state, null);
+            if (item != null) {
+                setItemContext(item);
+            }
+        }
+        itemName = item;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public void saveQTable(String filename) throws IOException {
+        // With a policy attached, qFunction is the applied snapshot's frozen view; save a plain copy of its values.
+        QFunction saved = policyPublisher != null ? qFunction.copy() : qFunction;
+        QTableStore.save(saved, filename);
+        if (Log.isEnabled(Log.Level.INFO)) {
+            String size = saved instanceof QTable
+                ? saved.size() + " states"
+                : saved.size() + " " + saved.getClass().getSimpleName() + " parameters";
+            Log.info("BuyerAgent", "Saved policy to " + filename + ": " + size +
+                     ", epsilon=" + epsilon + ", alpha=" + alpha);
+        }
+    }
+
+    public void loadQTable(String filename) throws IOException {
+        qFunction = QTableStore.loadPolicy(filename, ACTIONS.length);
+    }
+
+    public int getQTableSize() {
+        return qFunction.size();
+    }
+
+    // The tabular Q-table, or null when a function-approximation policy is in use.
+    public QTable getQTable() {
+        return qFunction instanceof QTable ? (QTable) qFunction : null;
+    }
+
+    // Lets several agents (e.g. parallel training workers) learn into one table.
+    public void setQTable(QTable qTable) {
+        setQFunction(qTable);
+    }
+
+    public QFunction getQFunction() {
+        return qFunction;
+    }
+
+    public void setQFunction(QFunction qFunction) {
+        this.qFunction = qFunction;
+    }
+
+    // Switches to a fixed-size linear Q-function over NegotiationState features.
+    public void useLinearPolicy() {
+        setQFunction(new LinearQFunction(ACTIONS.length));
     }
     
-    public void saveQTable(String filename) {
-        System.out.println("\n=== Q-Table Statistics ===");
-        System.out.println("Total states learned: " + qTable.size());
-        System.out.println("Exploration rate (epsilon): " + epsilon);
-        System.out.println("Learning rate (alpha): " + alpha);
+    public void attachPolicy(PolicyPublisher publisher) {
+        this.policyPublisher = publisher;
+        this.appliedPolicyVersion = -1;
+    }
+
+    public long getPolicyVersion() {
+        return appliedPolicyVersion;
+    }
+
+    private void applyPolicy(PolicySnapshot policy) {
+        this.qFunction = policy.getQFunction();
+        this.alpha = policy.getAlpha();
+        this.gamma = policy.getGamma();
+        this.epsilon = policy.getEpsilon();
+        this.minRoundsBeforeWalkAway = policy.getMinRoundsBeforeWalkAway();
+        this.hardWalkAwayRound = policy.getHardWalkAwayRound();
+        this.maxConsecutiveRejectsBeforeWalkAway = policy.getMaxConsecutiveRejectsBeforeWalkAway();
+        this.appliedPolicyVersion = policy.getVersion();
+    }
+
+    public void setLearningRates(double alpha, double gamma) {
+        this.alpha = alpha;
+        this.gamma = gamma;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public void setWalkAwayThresholds(int minRoundsBeforeWalkAway, int hardWalkAwayRound,
+                                      int maxConsecutiveRejectsBeforeWalkAway) {
+        this.minRoundsBeforeWalkAway = minRoundsBeforeWalkAway;
+        this.hardWalkAwayRound = hardWalkAwayRound;
+        this.maxConsecutiveRejectsBeforeWalkAway = maxConsecutiveRejectsBeforeWalkAway;
+    }
+
+    public int getMinRoundsBeforeWalkAway() {
+        return minRoundsBeforeWalkAway;
+    }
+
+    public int getHardWalkAwayRound() {
+        return hardWalkAwayRound;
+    }
+
+    public int getMaxConsecutiveRejectsBeforeWalkAway() {
+        return maxConsecutiveRejectsBeforeWalkAway;
+    }
+    
+    public void setConcession(double concessionRounds, double concessionGapShare) {
+        if (concessionRounds <= 0 || concessionGapShare < 0 || concessionGapShare > 1) {
+            throw new IllegalArgumentException("Bad concession curve: rounds=" + concessionRounds +
+                                               ", gap share=" + concessionGapShare);
+        }
+        this.concessionRounds = concessionRounds;
+        this.concessionGapShare = concessionGapShare;
+    }
+
+    public double getConcessionRounds() {
+        return concessionRounds;
+    }
+
+    public double getConcessionGapShare() {
+        return concessionGapShare;
+    }
+
+    // "adaptive" (pickTactic decides from the negotiation state) or a fixed tactic: "hard_ball", "opportunistic", "sneaky".
+    public void setTacticMode(String mode) {
+        String name = mode.trim().toUpperCase(Locale.ROOT);
+        if (name.equals("ADAPTIVE")) {
+            fixedTactic = null;
+            return;
+        }
+        try {
+            fixedTactic = Tactic.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown tactic mode: " + mode);
+        }
+    }
+
+    public String getTacticMode() {
+        return fixedTactic == null ? "adaptive" : fixedTactic.name().toLowerCase(Locale.ROOT);
     }
     
     public void setEpsilon(double epsilon) {
@@ -422,7 +902,7 @@ public class BuyerAgent {
     }
     
     public List<Double> getOfferHistory() {
-        return new ArrayList<>(offerHistory);
+        return state.getOfferHistory();
     }
 }
 
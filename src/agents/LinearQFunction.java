@@ -0,0 +1,114 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Linear Q-function over NegotiationState.toFeatureVector plus a bias term:
+ * Q(s, a) = w_a . [phi(s), 1].
+ *
+ * The parameter count is fixed at actions * (features + 1), so memory does not grow
+ * with the price range the way the $10 gap buckets of the tabular QTable do, and what
+ * is learned on cheap items carries over to expensive ones. Updates use a normalized
+ * step (alpha / (1 + |phi|^2)) so large prices cannot blow the weights up.
+ *
+ * Weights are plain doubles updated without locks; parallel trainers sharing one
+ * instance get Hogwild-style lost updates, which SGD tolerates.
+ */
+public class LinearQFunction implements QFunction {
+
+    public static final int FEATURES = 8;
+
+    private final int actionCount;
+    private final int width;
+    private final double[] weights;
+
+    public LinearQFunction(int actionCount) {
+        this(actionCount, new double[actionCount * (FEATURES + 1)]);
+    }
+
+    public LinearQFunction(int actionCount, double[] weights) {
+        this.actionCount = actionCount;
+        this.width = FEATURES + 1;
+        if (weights.length != actionCount * width) {
+            throw new IllegalArgumentException("Expected " + actionCount * width + " weights, got " + weights.length);
+        }
+        this.weights = weights;
+    }
+
+    @Override
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    @Override
+    public int size() {
+        return weights.length;
+    }
+
+    @Override
+    public LinearQFunction copy() {
+        return new LinearQFunction(actionCount, getWeights());
+    }
+
+    public double[] getWeights() {
+        return Arrays.copyOf(weights, weights.length);
+    }
+
+    private double q(double[] features, int action) {
+        int base = action * width;
+        double sum = weights[base + FEATURES];
+        for (int i = 0; i < FEATURES; i++) {
+            sum += weights[base + i] * features[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void values(long stateKey, double[] features, double[] out) {
+        for (int a = 0; a < actionCount; a++) {
+            out[a] = q(features, a);
+        }
+    }
+
+    @Override
+    public int argmax(long stateKey, double[] features) {
+        int maxIdx = 0;
+        double best = q(features, 0);
+        for (int a = 1; a < actionCount; a++) {
+            double v = q(features, a);
+            if (v > best) {
+                best = v;
+                maxIdx = a;
+            }
+        }
+        return maxIdx;
+    }
+
+    private double maxValue(double[] features) {
+        double best = q(features, 0);
+        for (int a = 1; a < actionCount; a++) {
+            best = Math.max(best, q(features, a));
+        }
+        return best;
+    }
+
+    @Override
+    public double update(long stateKey, double[] features, int action, double reward,
+                         long nextStateKey, double[] nextFeatures, double alpha, double gamma) {
+        double target = reward + (gamma != 0.0 ? gamma * maxValue(nextFeatures) : 0.0);
+        double tdError = target - q(features, action);
+
+        double norm = 1.0;
+        for (int i = 0; i < FEATURES; i++) {
+            norm += features[i] * features[i];
+        }
+        double step = alpha * tdError / norm;
+
+        int base = action * width;
+        for (int i = 0; i < FEATURES; i++) {
+            weights[base + i] += step * features[i];
+        }
+        weights[base + FEATURES] += step;
+        return tdError;
+    }
+}
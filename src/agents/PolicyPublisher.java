@@ -0,0 +1,49 @@
+package agents;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single atomic slot holding the policy live agents should use.
+ *
+ * A background trainer calls publish() with a new Q-function; every attached BuyerAgent
+ * reads current() at the start of its next turn, so in-flight sessions switch over
+ * without a restart. Readers only do a volatile read and never block.
+ */
+public class PolicyPublisher {
+
+    private final AtomicReference<PolicySnapshot> current = new AtomicReference<>();
+
+    public PolicyPublisher() {
+    }
+
+    public PolicyPublisher(PolicySnapshot initial) {
+        current.set(initial);
+    }
+
+    public PolicySnapshot current() {
+        return current.get();
+    }
+
+    public PolicySnapshot publish(QFunction qFunction, double alpha, double gamma, double epsilon,
+                                  int minRoundsBeforeWalkAway, int hardWalkAwayRound,
+                                  int maxConsecutiveRejectsBeforeWalkAway) {
+        // Copy the Q-values once, outside the CAS loop; retries only bump the version.
+        PolicySnapshot frozen = new PolicySnapshot(0, qFunction, alpha, gamma, epsilon,
+            minRoundsBeforeWalkAway, hardWalkAwayRound, maxConsecutiveRejectsBeforeWalkAway);
+        while (true) {
+            PolicySnapshot previous = current.get();
+            long version = previous == null ? 1 : previous.getVersion() + 1;
+            PolicySnapshot next = frozen.withVersion(version);
+            if (current.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    // Publishes whatever the given (typically training) agent has learned so far, with its settings.
+    public PolicySnapshot publishFrom(BuyerAgent trainer) {
+        return publish(trainer.getQFunction(), trainer.getAlpha(), trainer.getGamma(), trainer.getEpsilon(),
+            trainer.getMinRoundsBeforeWalkAway(), trainer.getHardWalkAwayRound(),
+            trainer.getMaxConsecutiveRejectsBeforeWalkAway());
+    }
+}
@@ -0,0 +1,81 @@
+package agents;
+
+/**
+ * Immutable, versioned buyer policy: a frozen copy of the Q-values together with the
+ * learning rates and walk-away thresholds that go with them.
+ *
+ * Agents attached to a PolicyPublisher act on the snapshot but never write to it;
+ * any attempt to update the frozen Q-function throws.
+ */
+public final class PolicySnapshot {
+
+    private final long version;
+    private final QFunction qFunction;
+    private final double alpha;
+    private final double gamma;
+    private final double epsilon;
+    private final int minRoundsBeforeWalkAway;
+    private final int hardWalkAwayRound;
+    private final int maxConsecutiveRejectsBeforeWalkAway;
+
+    public PolicySnapshot(long version, QFunction qFunction, double alpha, double gamma, double epsilon,
+                          int minRoundsBeforeWalkAway, int hardWalkAwayRound,
+                          int maxConsecutiveRejectsBeforeWalkAway) {
+        this(version, new ReadOnly(qFunction.copy()), alpha, gamma, epsilon,
+             minRoundsBeforeWalkAway, hardWalkAwayRound, maxConsecutiveRejectsBeforeWalkAway);
+    }
+
+    private PolicySnapshot(long version, ReadOnly frozen, double alpha, double gamma, double epsilon,
+                           int minRoundsBeforeWalkAway, int hardWalkAwayRound,
+                           int maxConsecutiveRejectsBeforeWalkAway) {
+        this.version = version;
+        this.qFunction = frozen;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.epsilon = epsilon;
+        this.minRoundsBeforeWalkAway = minRoundsBeforeWalkAway;
+        this.hardWalkAwayRound = hardWalkAwayRound;
+        this.maxConsecutiveRejectsBeforeWalkAway = maxConsecutiveRejectsBeforeWalkAway;
+    }
+
+    // Same policy under another version number, sharing the frozen Q-values.
+    public PolicySnapshot withVersion(long newVersion) {
+        return new PolicySnapshot(newVersion, (ReadOnly) qFunction, alpha, gamma, epsilon,
+            minRoundsBeforeWalkAway, hardWalkAwayRound, maxConsecutiveRejectsBeforeWalkAway);
+    }
+
+    public long getVersion() { return version; }
+    public QFunction getQFunction() { return qFunction; }
+    public double getAlpha() { return alpha; }
+    public double getGamma() { return gamma; }
+    public double getEpsilon() { return epsilon; }
+    public int getMinRoundsBeforeWalkAway() { return minRoundsBeforeWalkAway; }
+    public int getHardWalkAwayRound() { return hardWalkAwayRound; }
+    public int getMaxConsecutiveRejectsBeforeWalkAway() { return maxConsecutiveRejectsBeforeWalkAway; }
+
+    private static final class ReadOnly implements QFunction {
+        private final QFunction delegate;
+
+        ReadOnly(QFunction delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override public int getActionCount() { return delegate.getActionCount(); }
+        @Override public int size() { return delegate.size(); }
+        @Override public void values(long stateKey, double[] features, double[] out) { delegate.values(stateKey, features, out); }
+        @Override public int argmax(long stateKey, double[] features) { return delegate.argmax(stateKey, features); }
+        // Unseen states simply read as zeros; nothing is added to a published table.
+        @Override public void ensure(long stateKey) { }
+
+        @Override
+        public double update(long stateKey, double[] features, int action, double reward,
+                             long nextStateKey, double[] nextFeatures, double alpha, double gamma) {
+            throw new UnsupportedOperationException("Published policies are read-only");
+        }
+
+        @Override
+        public QFunction copy() {
+            return delegate.copy();
+        }
+    }
+}
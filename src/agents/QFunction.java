@@ -0,0 +1,34 @@
+package agents;
+
+/**
+ * Action-value function behind BuyerAgent's policy.
+ *
+ * Every call receives both views of the state: the packed bucket key (used by the
+ * tabular QTable) and the NegotiationState feature vector (used by function
+ * approximators such as LinearQFunction). Implementations ignore the view they don't need.
+ */
+public interface QFunction {
+
+    int getActionCount();
+
+    // Number of learned states (tabular) or parameters (approximators).
+    int size();
+
+    // Called when the agent visits a state, before choosing an action.
+    default void ensure(long stateKey) {
+    }
+
+    void values(long stateKey, double[] features, double[] out);
+
+    int argmax(long stateKey, double[] features);
+
+    /**
+     * One Q-learning step towards reward + gamma * max_a' Q(s', a').
+     * Returns the TD error measured before the update.
+     */
+    double update(long stateKey, double[] features, int action, double reward,
+                  long nextStateKey, double[] nextFeatures, double alpha, double gamma);
+
+    // Independent deep copy; later updates to either side are not seen by the other.
+    QFunction copy();
+}
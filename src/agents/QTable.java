@@ -0,0 +1,165 @@
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Q-table that can be shared by many training threads.
+ *
+ * State keys pack the (round, gap, rejects) buckets into one long. Each state's
+ * Q-values live in an AtomicLongArray of raw double bits and are updated with a
+ * compare-and-set loop, so writers never take a lock (Hogwild-style: the max over
+ * the next state's values is read without coordination).
+ */
+public class QTable implements QFunction {
+
+    private final int actionCount;
+    private final ConcurrentHashMap<Long, AtomicLongArray> entries;
+
+    public QTable(int actionCount) {
+        this.actionCount = actionCount;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    public static long stateKey(int roundBucket, int gapBucket, int rejectsBucket) {
+        return ((long) (roundBucket & 0xFF) << 40) | ((long) (rejectsBucket & 0xFF) << 32) | (gapBucket & 0xFFFFFFFFL);
+    }
+
+    public static int roundBucket(long key) { return (int) ((key >>> 40) & 0xFF); }
+    public static int rejectsBucket(long key) { return (int) ((key >>> 32) & 0xFF); }
+    public static int gapBucket(long key) { return (int) key; }
+
+    @Override
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(long key) {
+        return entries.containsKey(key);
+    }
+
+    // Adds an all-zero row for the state if it has never been seen.
+    @Override
+    public void ensure(long key) {
+        row(key);
+    }
+
+    public double get(long key, int action) {
+        AtomicLongArray row = entries.get(key);
+        return row == null ? 0.0 : Double.longBitsToDouble(row.get(action));
+    }
+
+    // Copies the state's Q-values into out (zeros for an unseen state).
+    public void values(long key, double[] out) {
+        AtomicLongArray row = entries.get(key);
+        for (int a = 0; a < actionCount; a++) {
+            out[a] = row == null ? 0.0 : Double.longBitsToDouble(row.get(a));
+        }
+    }
+
+    public double maxValue(long key) {
+        AtomicLongArray row = entries.get(key);
+        if (row == null) return 0.0;
+        double best = Double.longBitsToDouble(row.get(0));
+        for (int a = 1; a < actionCount; a++) {
+            best = Math.max(best, Double.longBitsToDouble(row.get(a)));
+        }
+        return best;
+    }
+
+    public int argmax(long key) {
+        AtomicLongArray row = entries.get(key);
+        if (row == null) return 0;
+        int maxIdx = 0;
+        double best = Double.longBitsToDouble(row.get(0));
+        for (int a = 1; a < actionCount; a++) {
+            double v = Double.longBitsToDouble(row.get(a));
+            if (v > best) {
+                best = v;
+                maxIdx = a;
+            }
+        }
+        return maxIdx;
+    }
+
+    /**
+     * Q(s,a) = (1 - alpha) * Q(s,a) + alpha * (reward + gamma * max_a' Q(s',a')).
+     * Returns the TD error (target minus the old value).
+     */
+    public double update(long key, int action, double reward, long nextKey, double alpha, double gamma) {
+        double target = reward + gamma * maxValue(nextKey);
+        AtomicLongArray row = row(key);
+        while (true) {
+            long oldBits = row.get(action);
+            double old = Double.longBitsToDouble(oldBits);
+            double updated = (1 - alpha) * old + alpha * target;
+            if (row.compareAndSet(action, oldBits, Double.doubleToRawLongBits(updated))) {
+                return target - old;
+            }
+        }
+    }
+
+    // Plain get first: computeIfAbsent would allocate a capturing lambda on every call.
+    private AtomicLongArray row(long key) {
+        AtomicLongArray row = entries.get(key);
+        if (row == null) {
+            row = entries.computeIfAbsent(key, k -> new AtomicLongArray(actionCount));
+        }
+        return row;
+    }
+
+    // QFunction view: the table only needs the bucket key, features are ignored.
+    @Override
+    public void values(long stateKey, double[] features, double[] out) {
+        values(stateKey, out);
+    }
+
+    @Override
+    public int argmax(long stateKey, double[] features) {
+        return argmax(stateKey);
+    }
+
+    @Override
+    public double update(long stateKey, double[] features, int action, double reward,
+                         long nextStateKey, double[] nextFeatures, double alpha, double gamma) {
+        return update(stateKey, action, reward, nextStateKey, alpha, gamma);
+    }
+
+    public void put(long key, double[] values) {
+        AtomicLongArray row = new AtomicLongArray(actionCount);
+        for (int a = 0; a < actionCount && a < values.length; a++) {
+            row.set(a, Double.doubleToRawLongBits(values[a]));
+        }
+        entries.put(key, row);
+    }
+
+    @Override
+    public QTable copy() {
+        QTable copy = new QTable(actionCount);
+        forEach(copy::put);
+        return copy;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    // Visits every state with a snapshot of its Q-values.
+    public void forEach(BiConsumer<Long, double[]> visitor) {
+        for (Map.Entry<Long, AtomicLongArray> entry : entries.entrySet()) {
+            AtomicLongArray row = entry.getValue();
+            double[] values = new double[actionCount];
+            for (int a = 0; a < actionCount; a++) {
+                values[a] = Double.longBitsToDouble(row.get(a));
+            }
+            visitor.accept(entry.getKey(), values);
+        }
+    }
+}
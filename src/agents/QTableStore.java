@@ -0,0 +1,181 @@
+package agents;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Binary persistence for the buyer's Q-function.
+ *
+ * Tabular layout (big-endian): magic "HGQT", int version, int actionCount, int entryCount, then per entry
+ * int roundBucket, int gapBucket, int rejectsBucket followed by one double per action.
+ *
+ * Linear layout: magic "HGQL", int version, int actionCount, int featureCount, then the weights
+ * action by action (featureCount weights followed by the bias).
+ */
+public class QTableStore {
+
+    private static final int MAGIC = 0x48475154; // "HGQT"
+    private static final int LINEAR_MAGIC = 0x4847514C; // "HGQL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    // Files above this size are read through a memory mapping instead of a buffered stream.
+    private static final long MMAP_THRESHOLD_BYTES = 8L * 1024 * 1024;
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static void save(QFunction qFunction, String filename) throws IOException {
+        if (qFunction instanceof QTable) {
+            save((QTable) qFunction, filename);
+        } else if (qFunction instanceof LinearQFunction) {
+            save((LinearQFunction) qFunction, filename);
+        } else {
+            throw new IOException("Don't know how to save " + qFunction.getClass().getSimpleName());
+        }
+    }
+
+    public static void save(QTable qTable, String filename) throws IOException {
+        int actionCount = qTable.getActionCount();
+        // Snapshot first: other threads may still be adding states while we write.
+        Map<Long, double[]> snapshot = new LinkedHashMap<>();
+        qTable.forEach(snapshot::put);
+
+        writeAtomically(filename, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(actionCount);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, double[]> entry : snapshot.entrySet()) {
+                long key = entry.getKey();
+                out.writeInt(QTable.roundBucket(key));
+                out.writeInt(QTable.gapBucket(key));
+                out.writeInt(QTable.rejectsBucket(key));
+                double[] values = entry.getValue();
+                for (int a = 0; a < actionCount; a++) {
+                    out.writeDouble(values[a]);
+                }
+            }
+        });
+    }
+
+    public static void save(LinearQFunction linear, String filename) throws IOException {
+        double[] weights = linear.getWeights();
+        writeAtomically(filename, out -> {
+            out.writeInt(LINEAR_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(linear.getActionCount());
+            out.writeInt(LinearQFunction.FEATURES);
+            for (double w : weights) {
+                out.writeDouble(w);
+            }
+        });
+    }
+
+    private static void writeAtomically(String filename, Writer writer) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path dir = target.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 1 << 16))) {
+                writer.write(out);
+            }
+            // Rename over the old file so readers never observe a half-written table.
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static QTable load(String filename, int actionCount) throws IOException {
+        QFunction loaded = loadPolicy(filename, actionCount);
+        if (!(loaded instanceof QTable)) {
+            throw new IOException(filename + " holds a linear policy, not a Q-table");
+        }
+        return (QTable) loaded;
+    }
+
+    // Loads either format, telling them apart by the magic number.
+    public static QFunction loadPolicy(String filename, int actionCount) throws IOException {
+        Path path = Paths.get(filename);
+        long size = Files.size(path);
+        if (size >= MMAP_THRESHOLD_BYTES) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return read(buffer, actionCount);
+            }
+        }
+        return read(ByteBuffer.wrap(Files.readAllBytes(path)), actionCount);
+    }
+
+    private static QFunction read(ByteBuffer buffer, int actionCount) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new IOException("Q-table file is truncated");
+        }
+        int magic = buffer.getInt();
+        if (magic != MAGIC && magic != LINEAR_MAGIC) {
+            throw new IOException("Not a Q-table file (bad magic)");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported Q-table version: " + version);
+        }
+        return magic == LINEAR_MAGIC ? readLinear(buffer, actionCount) : readTable(buffer, actionCount);
+    }
+
+    private static QTable readTable(ByteBuffer buffer, int actionCount) throws IOException {
+        int storedActions = buffer.getInt();
+        int count = buffer.getInt();
+        long entryBytes = 12L + 8L * storedActions;
+        if (count < 0 || storedActions < 0 || buffer.remaining() < count * entryBytes) {
+            throw new IOException("Q-table file is truncated");
+        }
+
+        QTable qTable = new QTable(actionCount);
+        for (int i = 0; i < count; i++) {
+            int round = buffer.getInt();
+            int gap = buffer.getInt();
+            int rejects = buffer.getInt();
+            double[] values = new double[actionCount];
+            for (int a = 0; a < storedActions; a++) {
+                double v = buffer.getDouble();
+                if (a < actionCount) {
+                    values[a] = v;
+                }
+            }
+            qTable.put(QTable.stateKey(round, gap, rejects), values);
+        }
+        return qTable;
+    }
+
+    private static LinearQFunction readLinear(ByteBuffer buffer, int actionCount) throws IOException {
+        int storedActions = buffer.getInt();
+        int features = buffer.getInt();
+        if (storedActions != actionCount || features != LinearQFunction.FEATURES) {
+            throw new IOException("Linear policy shape " + storedActions + "x" + features +
+                                  " does not match " + actionCount + "x" + LinearQFunction.FEATURES);
+        }
+        double[] weights = new double[actionCount * (features + 1)];
+        if (buffer.remaining() < weights.length * 8L) {
+            throw new IOException("Q-table file is truncated");
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = buffer.getDouble();
+        }
+        return new LinearQFunction(actionCount, weights);
+    }
+}
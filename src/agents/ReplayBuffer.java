@@ -0,0 +1,178 @@
+package agents;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fixed-capacity ring buffer of Q-learning transitions.
+ *
+ * Everything is stored in parallel primitive arrays allocated once up front, so no
+ * object is created per transition and memory stays constant however long training
+ * runs; once full, the oldest transition is overwritten. Priorities for prioritized
+ * sampling live in a sum tree over the same slots. When the policy is a function
+ * approximator, the state feature vectors are kept in flat arrays as well.
+ */
+public class ReplayBuffer {
+
+    private final int capacity;
+    private final long[] states;
+    private final byte[] actions;
+    private final double[] rewards;
+    private final long[] nextStates;
+    // Transitions that ended the episode: replayed without bootstrapping from nextStates.
+    private final boolean[] terminals;
+    private final int featureDims;
+    private final double[] features;
+    private final double[] nextFeatures;
+
+    // Sum tree: leaves start at treeOffset, node i holds the sum of its two children.
+    private final double[] tree;
+    private final int treeOffset;
+    private final double priorityExponent;
+    private double maxPriority = 1.0;
+
+    private int next = 0;
+    private int size = 0;
+
+    public ReplayBuffer(int capacity) {
+        this(capacity, 0.6);
+    }
+
+    // priorityExponent: 0 = uniform, 1 = fully proportional to |TD error|.
+    public ReplayBuffer(int capacity, double priorityExponent) {
+        this(capacity, priorityExponent, 0);
+    }
+
+    // featureDims > 0 also stores a feature vector for each state and next state.
+    public ReplayBuffer(int capacity, double priorityExponent, int featureDims) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Replay capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.states = new long[capacity];
+        this.actions = new byte[capacity];
+        this.rewards = new double[capacity];
+        this.nextStates = new long[capacity];
+        this.terminals = new boolean[capacity];
+        this.featureDims = featureDims;
+        this.features = new double[capacity * featureDims];
+        this.nextFeatures = new double[capacity * featureDims];
+        this.priorityExponent = priorityExponent;
+
+        int leaves = Integer.highestOneBit(capacity);
+        if (leaves < capacity) {
+            leaves <<= 1;
+        }
+        this.treeOffset = leaves;
+        this.tree = new double[2 * leaves];
+    }
+
+    public int capacity() { return capacity; }
+    public int size() { return size; }
+
+    public long state(int slot) { return states[slot]; }
+    public int action(int slot) { return actions[slot]; }
+    public double reward(int slot) { return rewards[slot]; }
+    public long nextState(int slot) { return nextStates[slot]; }
+    public boolean isTerminal(int slot) { return terminals[slot]; }
+
+    public void copyFeatures(int slot, double[] out) {
+        System.arraycopy(features, slot * featureDims, out, 0, featureDims);
+    }
+
+    public void copyNextFeatures(int slot, double[] out) {
+        System.arraycopy(nextFeatures, slot * featureDims, out, 0, featureDims);
+    }
+
+    // New transitions get the highest priority seen so far so they are replayed at least once soon.
+    public void add(long state, int action, double reward, long nextState) {
+        add(state, null, action, reward, nextState, null);
+    }
+
+    public void add(long state, double[] stateFeatures, int action, double reward,
+                    long nextState, double[] nextStateFeatures) {
+        add(state, stateFeatures, action, reward, nextState, nextStateFeatures, false);
+    }
+
+    public void add(long state, double[] stateFeatures, int action, double reward,
+                    long nextState, double[] nextStateFeatures, boolean terminal) {
+        int slot = next;
+        if (featureDims > 0) {
+            System.arraycopy(stateFeatures, 0, features, slot * featureDims, featureDims);
+            System.arraycopy(nextStateFeatures, 0, nextFeatures, slot * featureDims, featureDims);
+        }
+        states[slot] = state;
+        actions[slot] = (byte) action;
+        rewards[slot] = reward;
+        nextStates[slot] = nextState;
+        terminals[slot] = terminal;
+        setPriority(slot, maxPriority);
+
+        next = (next + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    // Fills out[0..count) with uniformly drawn slots (with replacement).
+    public int sampleUniform(Random random, int[] out, int count) {
+        if (size == 0) return 0;
+        int n = Math.min(count, out.length);
+        for (int i = 0; i < n; i++) {
+            out[i] = random.nextInt(size);
+        }
+        return n;
+    }
+
+    // Fills out[0..count) with slots drawn in proportion to their priority, one per equal-mass stratum.
+    public int samplePrioritized(Random random, int[] out, int count) {
+        if (size == 0) return 0;
+        int n = Math.min(count, out.length);
+        double total = tree[1];
+        if (total <= 0) {
+            return sampleUniform(random, out, n);
+        }
+        double segment = total / n;
+        for (int i = 0; i < n; i++) {
+            double mass = segment * (i + random.nextDouble());
+            out[i] = find(Math.min(mass, Math.nextDown(total)));
+        }
+        return n;
+    }
+
+    public void updatePriority(int slot, double tdError) {
+        double priority = Math.pow(Math.abs(tdError) + 1e-3, priorityExponent);
+        maxPriority = Math.max(maxPriority, priority);
+        setPriority(slot, priority);
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+        maxPriority = 1.0;
+        Arrays.fill(tree, 0.0);
+    }
+
+    private void setPriority(int slot, double priority) {
+        int node = treeOffset + slot;
+        double delta = priority - tree[node];
+        while (node >= 1) {
+            tree[node] += delta;
+            node >>>= 1;
+        }
+    }
+
+    private int find(double mass) {
+        int node = 1;
+        while (node < treeOffset) {
+            int left = node << 1;
+            if (mass < tree[left]) {
+                node = left;
+            } else {
+                mass -= tree[left];
+                node = left + 1;
+            }
+        }
+        return Math.min(node - treeOffset, size - 1);
+    }
+}
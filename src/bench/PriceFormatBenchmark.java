@@ -0,0 +1,114 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import util.PriceFormat;
+
+/**
+ * Compares PriceFormat against String.format("%.2f") on time and heap allocation.
+ *
+ * Before timing, it checks that both produce the same text for a set of rounding edge cases
+ * and a large sample of random prices, and exits non-zero on the first mismatch.
+ *
+ * Usage: PriceFormatBenchmark [iterations]
+ */
+public class PriceFormatBenchmark {
+
+    private static final double[] EDGE_CASES = {
+        0.0, 0.005, 0.015, 0.125, 0.994, 0.995, 0.999, 1.005, 2.675, 9.995, 10.0,
+        99.995, 100.005, 149.99, 150.0, 1234.565, 9999.999, 123456.785
+    };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+        Random random = new Random(42);
+        double[] prices = new double[4096];
+        for (int i = 0; i < prices.length; i++) {
+            // Mix of whole-dollar, cent-precision and arbitrary prices, as produced by the agent's concessions.
+            double raw = random.nextDouble() * 2000.0;
+            switch (i % 3) {
+                case 0: prices[i] = Math.floor(raw); break;
+                case 1: prices[i] = Math.round(raw * 100) / 100.0; break;
+                default: prices[i] = raw; break;
+            }
+        }
+
+        if (!verify(EDGE_CASES) || !verify(prices) || !verifyRandom(random, 1000000)) {
+            System.exit(1);
+        }
+        System.out.println("Output matches String.format for all checked values");
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        System.out.println("=== Price formatting benchmark (" + iterations + " calls) ===");
+        for (String mode : new String[] {"String.format", "PriceFormat", "PriceFormat(same)", "appendTo"}) {
+            long sink = 0;
+            for (int i = 0; i < 200000; i++) {
+                sink += run(mode, prices, i);
+            }
+
+            long bytesBefore = threads.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += run(mode, prices, i);
+            }
+            long elapsed = System.nanoTime() - start;
+            long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+
+            System.out.println(String.format("%-18s %8.1f ns/op %8.1f B/op  (sink %d)",
+                mode, elapsed / (double) iterations, bytes / (double) iterations, sink));
+        }
+    }
+
+    private static final StringBuilder SCRATCH = new StringBuilder(64);
+
+    private static int run(String mode, double[] prices, int i) {
+        double price = prices[i & (prices.length - 1)];
+        switch (mode) {
+            case "String.format":
+                return String.format("%.2f", price).length();
+            case "PriceFormat":
+                return PriceFormat.format(price).length();
+            case "PriceFormat(same)":
+                // A turn renders the same price several times; this exercises the per-thread cache.
+                return PriceFormat.format(prices[(i >> 3) & (prices.length - 1)]).length();
+            default:
+                SCRATCH.setLength(0);
+                return PriceFormat.appendTo(SCRATCH, price).length();
+        }
+    }
+
+    private static boolean verify(double[] values) {
+        for (double value : values) {
+            if (!check(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean verifyRandom(Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!check(random.nextDouble() * Math.pow(10, random.nextInt(7)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean check(double value) {
+        String expected = String.format("%.2f", value);
+        String actual = PriceFormat.format(value);
+        SCRATCH.setLength(0);
+        String appended = PriceFormat.appendTo(SCRATCH, value).toString();
+        if (!expected.equals(actual) || !expected.equals(appended)) {
+            System.out.println("Mismatch for " + value + ": String.format=" + expected +
+                               " format=" + actual + " appendTo=" + appended);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package bench;
+
+import agents.BuyerAgent;
+import dialogue.DialogueGenerator;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import models.NegotiationState;
+
+/**
+ * Measures heap allocation and time of BuyerAgent's turn path over 20-round negotiations.
+ *
+ * Dialogue text comes from a constant stub generator so only the agent's own
+ * bookkeeping (state, history, Q-table lookups) is measured. Allocation is read from
+ * the HotSpot per-thread allocation counter.
+ *
+ * Usage: TurnAllocationBenchmark [negotiations]
+ */
+public class TurnAllocationBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int negotiations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        BuyerAgent buyer = new BuyerAgent(new ConstantGenerator(), 300.0, 150.0);
+        buyer.setSeed(7);
+
+        System.out.println("=== Turn allocation benchmark (" + ROUNDS + " seller turns per negotiation) ===");
+        for (String mode : new String[] {"decideTurn", "respondToSeller"}) {
+            boolean render = mode.equals("respondToSeller");
+            long sink = 0;
+            // Warm up so the JIT has compiled the path before we count.
+            for (int i = 0; i < 20000; i++) {
+                sink += negotiate(buyer, render);
+            }
+
+            long bytesBefore = threads.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            long turns = 0;
+            for (int i = 0; i < negotiations; i++) {
+                turns += negotiate(buyer, render);
+            }
+            long elapsed = System.nanoTime() - start;
+            long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+
+            System.out.println(String.format("%-16s %10.1f B/negotiation %8.1f B/turn %8.1f ns/turn  (%d turns, sink %d)",
+                mode, bytes / (double) negotiations, bytes / (double) turns, elapsed / (double) turns, turns, sink));
+        }
+    }
+
+    // Runs one negotiation against a seller who concedes $10 a round; returns the number of turns played.
+    private static int negotiate(BuyerAgent buyer, boolean render) {
+        buyer.reset();
+        if (render) {
+            buyer.makeInitialOffer();
+        } else {
+            buyer.startNegotiation();
+        }
+        double sellerPrice = 500.0;
+        int turns = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            if (buyer.hasWalkedAway() || buyer.isDealReached()) {
+                break;
+            }
+            if (render) {
+                buyer.respondToSeller("I can't go that low.", sellerPrice);
+            } else {
+                buyer.decideTurn(sellerPrice);
+            }
+            sellerPrice -= 10.0;
+            turns++;
+        }
+        return turns;
+    }
+
+    private static class ConstantGenerator implements DialogueGenerator {
+        public String generate(String intent, double price) { return "How about it?"; }
+        public String generate(String intent, double price, String opponentMessage) { return "How about it?"; }
+        public void updateContext(NegotiationState state, String lastMessage) { }
+        public void resetConversation() { }
+        public void setItemContext(String item) { }
+        public String getFallbackDialogue(String intent, double price) { return "How about it?"; }
+        public List<String> getConversationHistory() { return Collections.emptyList(); }
+        public void restoreConversation(List<String> history) { }
+        public DialogueGenerator newSession() { return this; }
+    }
+}
@@ -8,6 +8,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import metrics.Metrics;
+import metrics.Stage;
+import util.Log;
 
 public class DatasetParser {
     
@@ -25,6 +28,7 @@ public class DatasetParser {
     }
     
     public List<NegotiationExample> parseBuyerExamples(String filePath) throws IOException {
+        long start = Metrics.start();
         List<NegotiationExample> examples = new ArrayList<>();
         String content = new String(Files.readAllBytes(Paths.get(filePath)));
         
@@ -33,13 +37,13 @@ public class DatasetParser {
         
         if (root.isJsonArray()) {
             dataArray = root.getAsJsonArray();
-            System.out.println("Found JSON array with " + dataArray.size() + " elements");
+            Log.info("DatasetParser", "Found JSON array with " + dataArray.size() + " elements");
         } else if (root.isJsonObject()) {
             dataArray = new JsonArray();
             dataArray.add(root.getAsJsonObject());
-            System.out.println("Found JSON object, converted to array");
+            Log.info("DatasetParser", "Found JSON object, converted to array");
         } else {
-            System.out.println("Unknown JSON type");
+            Log.warn("DatasetParser", "Unknown JSON type in " + filePath);
             return examples;
         }
         
@@ -57,46 +61,19 @@ public class DatasetParser {
             
             if (events == null || agentsElement == null) {
                 if (processed <= 3) {
-                    System.out.println("Element " + processed + ": Missing events or agents");
+                    Log.warn("DatasetParser", "Element " + processed + ": Missing events or agents");
                 }
                 continue;
             }
             
-            Map<String, String> agentRoles = new HashMap<>();
+            Map<String, String> agentRoles = readAgentRoles(agentsElement);
             
-            if (agentsElement.isJsonArray()) {
-                JsonArray agentsArray = agentsElement.getAsJsonArray();
-                for (int j = 0; j < agentsArray.size(); j++) {
-                    JsonElement agentElem = agentsArray.get(j);
-                    if (agentElem != null && agentElem.isJsonObject()) {
-                        JsonObject agentObj = agentElem.getAsJsonObject();
-                        if (agentObj.has("id") && agentObj.has("role")) {
-                            agentRoles.put(agentObj.get("id").getAsString(), agentObj.get("role").getAsString());
-                        }
-                    }
-                }
-            } else if (agentsElement.isJsonObject()) {
-                JsonObject agentsObj = agentsElement.getAsJsonObject();
-                for (Map.Entry<String, JsonElement> entry : agentsObj.entrySet()) {
-                    String agentId = entry.getKey();
-                    JsonElement agentElem = entry.getValue();
-                    if (agentElem != null && agentElem.isJsonObject()) {
-                        JsonObject agentObj = agentElem.getAsJsonObject();
-                        if (agentObj.has("role")) {
-                            agentRoles.put(agentId, agentObj.get("role").getAsString());
-                        } else if (agentObj.has("Role")) {
-                            agentRoles.put(agentId, agentObj.get("Role").getAsString());
-                        }
-                    }
-                }
-            }
-            
-            if (processed == 1) {
-                System.out.println("events size: " + events.size());
+            if (processed == 1 && Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("DatasetParser", "events size: " + events.size());
                 if (events.size() > 0 && events.get(0).isJsonObject()) {
-                    System.out.println("First event keys: " + events.get(0).getAsJsonObject().keySet());
+                    Log.debug("DatasetParser", "First event keys: " + events.get(0).getAsJsonObject().keySet());
                 }
-                System.out.println("agent roles: " + agentRoles);
+                Log.debug("DatasetParser", "agent roles: " + agentRoles);
             }
             
             for (int i = 0; i < events.size(); i++) {
@@ -105,8 +82,8 @@ public class DatasetParser {
                 
                 JsonObject event = eventElement.getAsJsonObject();
                 
-                if (processed == 1 && i < 3) {
-                    System.out.println("Event " + i + " keys: " + event.keySet());
+                if (processed == 1 && i < 3 && Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug("DatasetParser", "Event " + i + " keys: " + event.keySet());
                 }
                 
                 JsonElement agentElement = event.has("agent") ? event.get("agent") : 
@@ -147,10 +124,197 @@ public class DatasetParser {
             }
         }
         
-        System.out.println("Processed " + processed + " elements, found " + examples.size() + " buyer examples");
+        Log.info("DatasetParser", "Processed " + processed + " elements, found " + examples.size() + " buyer examples");
+        Metrics.record(Stage.DATASET_PARSE, start);
         return examples;
     }
     
+    /**
+     * Seller price trajectories, one array per dialogue, in the order the seller mentioned them.
+     * Prices come from seller offer events and from "$" amounts in seller messages.
+     */
+    public List<double[]> parseSellerPriceTrajectories(String filePath) throws IOException {
+        List<double[]> trajectories = new ArrayList<>();
+        for (Transcript transcript : parseTranscripts(filePath)) {
+            List<Double> prices = new ArrayList<>();
+            for (Turn turn : transcript.turns) {
+                if ("seller".equals(turn.role) && turn.price > 0) {
+                    prices.add(turn.price);
+                }
+            }
+            if (prices.size() >= 2) {
+                double[] trajectory = new double[prices.size()];
+                for (int i = 0; i < trajectory.length; i++) {
+                    trajectory[i] = prices.get(i);
+                }
+                trajectories.add(trajectory);
+            }
+        }
+        
+        Log.info("DatasetParser", "Found " + trajectories.size() + " seller price trajectories");
+        return trajectories;
+    }
+    
+    public static class Turn {
+        public String role;      // "buyer" or "seller"
+        public String action;    // message, offer, accept, reject, quit
+        public String text;      // null for non-message events
+        public double price;     // 0.0 when the turn names no price
+    }
+    
+    public static class Transcript {
+        public String itemTitle;     // null when the scenario has no listing
+        public double listPrice;     // 0.0 when the scenario has no listing price
+        public double buyerTarget;   // 0.0 when unknown
+        public List<Turn> turns = new ArrayList<>();
+    }
+    
+    /**
+     * Full dialogues with both sides' turns in order. Roles come from the agents field,
+     * falling back to the scenario knowledge bases (index = agent id), then to 0 = buyer.
+     */
+    public List<Transcript> parseTranscripts(String filePath) throws IOException {
+        List<Transcript> transcripts = new ArrayList<>();
+        String content = new String(Files.readAllBytes(Paths.get(filePath)));
+        
+        JsonElement root = JsonParser.parseString(content);
+        if (!root.isJsonArray()) {
+            return transcripts;
+        }
+        
+        for (JsonElement element : root.getAsJsonArray()) {
+            if (element == null || !element.isJsonObject()) continue;
+            JsonObject example = element.getAsJsonObject();
+            
+            JsonArray events = example.has("events") ? example.getAsJsonArray("events") : null;
+            JsonElement agentsElement = example.has("agents") ? example.get("agents") : null;
+            if (events == null || agentsElement == null) continue;
+            
+            Map<String, String> agentRoles = readAgentRoles(agentsElement);
+            Transcript transcript = new Transcript();
+            readScenario(example, agentRoles, transcript);
+            
+            for (JsonElement eventElement : events) {
+                if (eventElement == null || !eventElement.isJsonObject()) continue;
+                JsonObject event = eventElement.getAsJsonObject();
+                
+                JsonElement agentElement = event.has("agent") ? event.get("agent") : 
+                                         event.has("agent_id") ? event.get("agent_id") : null;
+                JsonElement actionElement = event.has("action") ? event.get("action") : 
+                                           event.has("type") ? event.get("type") : null;
+                if (agentElement == null || !agentElement.isJsonPrimitive()) continue;
+                if (actionElement == null || !actionElement.isJsonPrimitive()) continue;
+                String agent = agentElement.getAsString();
+                
+                String role = agentRoles.get(agent);
+                boolean isBuyer = "buyer".equalsIgnoreCase(role) || 
+                                  "buyer".equalsIgnoreCase(agent) || 
+                                  (role == null && "0".equals(agent));
+                
+                Turn turn = new Turn();
+                turn.role = isBuyer ? "buyer" : "seller";
+                turn.action = actionElement.getAsString().toLowerCase();
+                JsonElement data = event.has("data") ? event.get("data") : null;
+                turn.text = data != null && data.isJsonPrimitive() ? data.getAsString() : null;
+                turn.price = eventPrice(event);
+                transcript.turns.add(turn);
+            }
+            
+            if (!transcript.turns.isEmpty()) {
+                transcripts.add(transcript);
+            }
+        }
+        
+        return transcripts;
+    }
+    
+    private void readScenario(JsonObject example, Map<String, String> agentRoles, Transcript transcript) {
+        JsonElement scenario = example.get("scenario");
+        if (scenario == null || !scenario.isJsonObject()) return;
+        JsonElement kbs = scenario.getAsJsonObject().get("kbs");
+        if (kbs == null || !kbs.isJsonArray()) return;
+        
+        JsonArray kbArray = kbs.getAsJsonArray();
+        for (int i = 0; i < kbArray.size(); i++) {
+            if (!kbArray.get(i).isJsonObject()) continue;
+            JsonObject kb = kbArray.get(i).getAsJsonObject();
+            
+            JsonObject item = kb.has("item") && kb.get("item").isJsonObject() ? kb.getAsJsonObject("item") : null;
+            if (item != null && transcript.listPrice <= 0) {
+                transcript.listPrice = numberOrZero(item.get("Price"));
+            }
+            if (item != null && transcript.itemTitle == null && item.has("Title") && item.get("Title").isJsonPrimitive()) {
+                transcript.itemTitle = item.get("Title").getAsString();
+            }
+            
+            JsonObject personal = kb.has("personal") && kb.get("personal").isJsonObject() ? kb.getAsJsonObject("personal") : null;
+            if (personal == null || !personal.has("Role")) continue;
+            String role = personal.get("Role").getAsString();
+            agentRoles.putIfAbsent(String.valueOf(i), role);
+            if ("buyer".equalsIgnoreCase(role)) {
+                transcript.buyerTarget = numberOrZero(personal.get("Target"));
+            }
+        }
+    }
+    
+    private double numberOrZero(JsonElement element) {
+        if (element == null || !element.isJsonPrimitive()) return 0.0;
+        try {
+            return element.getAsDouble();
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+    
+    private double eventPrice(JsonObject event) {
+        JsonElement data = event.has("data") ? event.get("data") : null;
+        if (data == null || data.isJsonNull()) return 0.0;
+        if (data.isJsonObject()) {
+            JsonObject obj = data.getAsJsonObject();
+            if (obj.has("price") && obj.get("price").isJsonPrimitive()) {
+                try {
+                    return obj.get("price").getAsDouble();
+                } catch (NumberFormatException e) {
+                    return 0.0;
+                }
+            }
+            return 0.0;
+        }
+        return data.isJsonPrimitive() ? extractPrice(data.getAsString()) : 0.0;
+    }
+    
+    private Map<String, String> readAgentRoles(JsonElement agentsElement) {
+        Map<String, String> agentRoles = new HashMap<>();
+        
+        if (agentsElement.isJsonArray()) {
+            JsonArray agentsArray = agentsElement.getAsJsonArray();
+            for (int j = 0; j < agentsArray.size(); j++) {
+                JsonElement agentElem = agentsArray.get(j);
+                if (agentElem != null && agentElem.isJsonObject()) {
+                    JsonObject agentObj = agentElem.getAsJsonObject();
+                    if (agentObj.has("id") && agentObj.has("role")) {
+                        agentRoles.put(agentObj.get("id").getAsString(), agentObj.get("role").getAsString());
+                    }
+                }
+            }
+        } else if (agentsElement.isJsonObject()) {
+            JsonObject agentsObj = agentsElement.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : agentsObj.entrySet()) {
+                String agentId = entry.getKey();
+                JsonElement agentElem = entry.getValue();
+                if (agentElem != null && agentElem.isJsonObject()) {
+                    JsonObject agentObj = agentElem.getAsJsonObject();
+                    if (agentObj.has("role")) {
+                        agentRoles.put(agentId, agentObj.get("role").getAsString());
+                    } else if (agentObj.has("Role")) {
+                        agentRoles.put(agentId, agentObj.get("Role").getAsString());
+                    }
+                }
+            }
+        }
+        return agentRoles;
+    }
+    
     public Map<String, List<String>> groupBuyerUtterancesByIntent(List<NegotiationExample> examples) {
         Map<String, List<String>> intentGroups = new HashMap<>();
         
@@ -180,7 +344,8 @@ public class DatasetParser {
         }
     }
     
-    private String inferIntent(String utterance) {
+    // The intent label given to a buyer utterance in parseBuyerExamples.
+    public String inferIntent(String utterance) {
         String lower = utterance.toLowerCase();
         if (lower.contains("accept") || lower.contains("deal") || lower.contains("agreed")) {
             return "ACCEPT";
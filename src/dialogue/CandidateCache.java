@@ -0,0 +1,123 @@
+package dialogue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import metrics.Counter;
+import metrics.Metrics;
+
+/**
+ * Bounded, thread-safe memo of filtered candidate pools, shared by all sessions of a generator.
+ *
+ * Keys spread over a fixed number of stripes, each an access-ordered LinkedHashMap behind its own
+ * lock that drops its least recently used entry once it holds capacity / STRIPES pools; so
+ * eviction is LRU within a stripe and lookups on different stripes never contend. Cached pools
+ * are shared and must not be modified.
+ *
+ * Hits, misses and evictions are counted here (always) and in Metrics (when enabled).
+ */
+public final class CandidateCache {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final class Stripe extends LinkedHashMap<String, int[]> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                Metrics.increment(Counter.CANDIDATE_CACHE_EVICTIONS);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public CandidateCache(int capacity) {
+        int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    // The cached pool for key, or null (counted as a miss).
+    public int[] get(String key) {
+        Stripe stripe = stripe(key);
+        int[] pool;
+        synchronized (stripe) {
+            pool = stripe.get(key);
+        }
+        if (pool != null) {
+            hits.increment();
+            Metrics.increment(Counter.CANDIDATE_CACHE_HITS);
+        } else {
+            misses.increment();
+            Metrics.increment(Counter.CANDIDATE_CACHE_MISSES);
+        }
+        return pool;
+    }
+
+    public void put(String key, int[] pool) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, pool);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Share of lookups served from the cache, 0 before the first lookup.
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private Stripe stripe(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+}
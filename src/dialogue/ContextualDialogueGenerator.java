@@ -1,22 +1,54 @@
 package dialogue;
 
 import data.DatasetParser;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Stage;
 import models.NegotiationState;
+import util.Log;
+import util.PriceFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 public class ContextualDialogueGenerator implements DialogueGenerator {
     
-    private Map<String, List<String>> utterancesByIntent;
+    // All utterance text, stored once; everything below refers to it by handle.
+    private UtteranceArena arena;
+    // Candidate handles per intent. Repeated utterances keep their repeats, so common lines stay as likely as before.
+    private Map<String, int[]> utterancesByIntent;
+    // Price templates by handle, compiled on first use (immutable, so a racy publish is harmless).
+    private PriceTemplate[] templates;
+    // Sparse TF-IDF vectors by handle, built the first time a handle is scored (immutable, published like templates).
+    private TermVector[] termVectors;
     private Random random;
     private Pattern pricePattern;
     private List<String> conversationHistory;
     private NegotiationState currentState;
     private Map<String, Integer> vocab;
-    private List<String> corpus;
+    // Occurrences of each handle across all intents, and their total: the TF-IDF corpus.
+    private int[] corpusCounts;
+    private int corpusSize;
+    // Document frequency per word, computed the first time the word is scored and shared by all sessions.
+    private Map<String, Integer> documentFrequency;
     private String itemContext;
     private Set<String> itemContextTokens;
     private Set<String> likelyItemWords;
+    // Retrieval shards per intent, as positions into utterancesByIntent: candidates that name no likely
+    // item (always eligible), and candidates that do, indexed by every word they contain (eligible only
+    // through a word of the item context). Together they give the item-mismatch filter's result
+    // without looking at the excluded candidates; see itemPool.
+    private Map<String, int[]> genericShards;
+    private Map<String, Map<String, int[]>> itemShards;
+    // This session's eligible candidates per intent under the current item context, built on first use.
+    private Map<String, int[]> itemPools;
+    // Filtered pools by (intent, item context, seller message with amounts masked); null when disabled.
+    private CandidateCache candidateCache;
+
+    // Pools kept in the candidate cache; -Dhaggle.candidateCache.size=0 turns it off.
+    private static final int CANDIDATE_CACHE_SIZE = Integer.getInteger("haggle.candidateCache.size", 4096);
+    private static final Pattern AMOUNT = Pattern.compile("\\$?\\s*\\d+(?:[.,]\\d+)*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
 
     // Minimal stopword list to avoid treating generic words as "items"
     private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
@@ -31,38 +63,103 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
     ));
     
     public ContextualDialogueGenerator(String datasetPath) throws Exception {
+        this(new DatasetParser().parseBuyerExamples(datasetPath));
+    }
+    
+    // Builds from examples that were already parsed, e.g. shared with another generator.
+    public ContextualDialogueGenerator(List<DatasetParser.NegotiationExample> examples) {
+        long start = Metrics.start();
         this.random = new Random();
         this.pricePattern = Pattern.compile("\\$?\\s*(\\d+(\\.\\d{1,2})?)");
         this.conversationHistory = new ArrayList<>();
         this.vocab = new HashMap<>();
-        this.corpus = new ArrayList<>();
+        this.documentFrequency = new ConcurrentHashMap<>();
         this.itemContext = null;
         this.itemContextTokens = new HashSet<>();
         this.likelyItemWords = new HashSet<>();
-        loadUtterances(datasetPath);
-        buildVocab(datasetPath);
+        this.itemPools = new HashMap<>();
+        this.candidateCache = CANDIDATE_CACHE_SIZE > 0 ? new CandidateCache(CANDIDATE_CACHE_SIZE) : null;
+        loadUtterances(examples);
+        buildVocab();
+        Metrics.record(Stage.CONTEXTUAL_BUILD, start);
     }
     
-    private void loadUtterances(String datasetPath) throws Exception {
-        DatasetParser parser = new DatasetParser();
-        List<DatasetParser.NegotiationExample> examples = parser.parseBuyerExamples(datasetPath);
-        
-        utterancesByIntent = new HashMap<>();
+    // Shares the loaded (read-only) utterances and vocabulary; conversation state starts fresh.
+    private ContextualDialogueGenerator(ContextualDialogueGenerator shared) {
+        this.random = new Random();
+        this.pricePattern = shared.pricePattern;
+        this.conversationHistory = new ArrayList<>();
+        this.vocab = shared.vocab;
+        this.corpusCounts = shared.corpusCounts;
+        this.corpusSize = shared.corpusSize;
+        this.documentFrequency = shared.documentFrequency;
+        this.itemContext = null;
+        this.itemContextTokens = new HashSet<>();
+        this.likelyItemWords = shared.likelyItemWords;
+        this.genericShards = shared.genericShards;
+        this.itemShards = shared.itemShards;
+        this.itemPools = new HashMap<>();
+        this.candidateCache = shared.candidateCache;
+        this.arena = shared.arena;
+        this.utterancesByIntent = shared.utterancesByIntent;
+        this.templates = shared.templates;
+        this.termVectors = shared.termVectors;
+    }
+    
+    @Override
+    public DialogueGenerator newSession() {
+        return new ContextualDialogueGenerator(this);
+    }
+    
+    // For reproducible output, e.g. benchmarks and evaluation runs.
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+    
+    private void loadUtterances(List<DatasetParser.NegotiationExample> examples) {
+        arena = new UtteranceArena();
+        Map<String, List<Integer>> handlesByIntent = new HashMap<>();
         for (DatasetParser.NegotiationExample ex : examples) {
             if (!ex.utterances.isEmpty() && !ex.intents.isEmpty()) {
                 String intent = normalizeIntent(ex.intents.get(0));
                 String utterance = ex.utterances.get(0).trim();
                 
                 if (utterance.length() > 10 && utterance.length() < 200) {
-                    utterancesByIntent.computeIfAbsent(intent, k -> new ArrayList<>()).add(utterance);
+                    handlesByIntent.computeIfAbsent(intent, k -> new ArrayList<>()).add(arena.intern(utterance));
                 }
             }
         }
+        arena.seal();
+        
+        utterancesByIntent = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : handlesByIntent.entrySet()) {
+            List<Integer> handles = entry.getValue();
+            int[] array = new int[handles.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = handles.get(i);
+            }
+            utterancesByIntent.put(entry.getKey(), array);
+        }
+        templates = new PriceTemplate[arena.size()];
+        termVectors = new TermVector[arena.size()];
         
-        System.out.println("Loaded utterances by intent:");
-        for (Map.Entry<String, List<String>> entry : utterancesByIntent.entrySet()) {
-            System.out.println("  " + entry.getKey() + ": " + entry.getValue().size() + " utterances");
+        if (Log.isEnabled(Log.Level.INFO)) {
+            StringBuilder summary = new StringBuilder("Loaded utterances by intent:");
+            for (Map.Entry<String, int[]> entry : utterancesByIntent.entrySet()) {
+                summary.append(' ').append(entry.getKey()).append('=').append(entry.getValue().length);
+            }
+            summary.append(" (").append(arena.size()).append(" distinct, ").append(arena.byteSize()).append(" bytes)");
+            Log.info("ContextualDialogueGenerator", summary.toString());
+        }
+    }
+    
+    private PriceTemplate template(int handle) {
+        PriceTemplate template = templates[handle];
+        if (template == null) {
+            template = PriceTemplate.compile(arena.get(handle));
+            templates[handle] = template;
         }
+        return template;
     }
     
     private String normalizeIntent(String intent) {
@@ -93,14 +190,18 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         }
     }
 
-    private void buildVocab(String datasetPath) throws Exception {
+    private void buildVocab() {
         int idx = 0;
+        corpusCounts = new int[arena.size()];
+        corpusSize = 0;
         for (String intent : utterancesByIntent.keySet()) {
-            List<String> utterances = utterancesByIntent.get(intent);
-            corpus.addAll(utterances);
-            
-            for (String utterance : utterances) {
-                String[] words = utterance.toLowerCase().split("\\s+");
+            for (int handle : utterancesByIntent.get(intent)) {
+                corpusSize++;
+                if (corpusCounts[handle]++ > 0) {
+                    // A repeat adds no new words.
+                    continue;
+                }
+                String[] words = arena.get(handle).toLowerCase().split("\\s+");
                 for (String word : words) {
                     if (!vocab.containsKey(word)) {
                         vocab.put(word, idx++);
@@ -112,13 +213,91 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         // Build a lightweight list of "likely item words" from common determiner patterns in the corpus.
         // Example: "the stereo", "this couch", "your bike" -> stereo/couch/bike are likely item tokens.
         buildLikelyItemWords();
+        buildShards();
+    }
+
+    private void buildShards() {
+        genericShards = new HashMap<>();
+        itemShards = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : utterancesByIntent.entrySet()) {
+            int[] candidates = entry.getValue();
+            int[] generic = new int[candidates.length];
+            int genericCount = 0;
+            Map<String, List<Integer>> postings = new HashMap<>();
+            for (int pos = 0; pos < candidates.length; pos++) {
+                String lower = arena.get(candidates[pos]).toLowerCase();
+                if (!candidateMentionsOtherLikelyItem(lower)) {
+                    generic[genericCount++] = pos;
+                    continue;
+                }
+                for (String word : new LinkedHashSet<>(Arrays.asList(tokenize(lower)))) {
+                    postings.computeIfAbsent(word, k -> new ArrayList<>()).add(pos);
+                }
+            }
+            genericShards.put(entry.getKey(), Arrays.copyOf(generic, genericCount));
+            Map<String, int[]> shards = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> posting : postings.entrySet()) {
+                List<Integer> positions = posting.getValue();
+                int[] array = new int[positions.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = positions.get(i);
+                }
+                shards.put(posting.getKey(), array);
+            }
+            itemShards.put(entry.getKey(), shards);
+        }
+    }
+
+    /**
+     * The candidates that survive the item-mismatch filter under the current item context, in their
+     * original order: the generic shard plus the item shards of the context's words. Without an item
+     * context nothing is excluded and this is the whole bucket.
+     */
+    private int[] itemPool(String intent, int[] candidates) {
+        if (itemContextTokens == null || itemContextTokens.isEmpty()) {
+            return candidates;
+        }
+        int[] pool = itemPools.get(intent);
+        if (pool != null) {
+            return pool;
+        }
+        int[] generic = genericShards.get(intent);
+        Map<String, int[]> shards = itemShards.get(intent);
+        List<int[]> selected = new ArrayList<>();
+        int total = generic.length;
+        for (String token : itemContextTokens) {
+            int[] shard = shards.get(token);
+            if (shard != null) {
+                selected.add(shard);
+                total += shard.length;
+            }
+        }
+        int[] positions = Arrays.copyOf(generic, total);
+        int n = generic.length;
+        for (int[] shard : selected) {
+            System.arraycopy(shard, 0, positions, n, shard.length);
+            n += shard.length;
+        }
+        // A candidate can sit in several selected shards: merge back into bucket order once each.
+        Arrays.sort(positions);
+        pool = new int[total];
+        int kept = 0;
+        for (int i = 0; i < total; i++) {
+            if (i == 0 || positions[i] != positions[i - 1]) {
+                pool[kept++] = candidates[positions[i]];
+            }
+        }
+        pool = Arrays.copyOf(pool, kept);
+        itemPools.put(intent, pool);
+        return pool;
     }
 
     private void buildLikelyItemWords() {
         Map<String, Integer> counts = new HashMap<>();
-        for (String doc : corpus) {
-            if (doc == null) continue;
-            String[] toks = tokenize(doc);
+        for (int handle = 0; handle < corpusCounts.length; handle++) {
+            int occurrences = corpusCounts[handle];
+            if (occurrences == 0) continue;
+            String[] toks = tokenize(arena.get(handle));
             for (int i = 0; i + 1 < toks.length; i++) {
                 String t = toks[i];
                 if (t == null) continue;
@@ -127,7 +306,7 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
                     if (next == null || next.length() < 3) continue;
                     if (STOPWORDS.contains(next)) continue;
                     if (next.matches("\\d+")) continue;
-                    counts.put(next, counts.getOrDefault(next, 0) + 1);
+                    counts.put(next, counts.getOrDefault(next, 0) + occurrences);
                 }
             }
         }
@@ -179,6 +358,14 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         boolean mentionsSomeItem = candidateMentionsOtherLikelyItem(lower);
         return mentionsSomeItem && !mentionsContext;
     }
+    
+    /**
+     * Whether text names some item other than the current item context: the test generate() uses
+     * to keep such candidates out, exposed so any generator's output can be scored against it.
+     */
+    public boolean mentionsOtherItem(String text) {
+        return shouldExcludeCandidateForItemMismatch(text);
+    }
 
     private double[] computeTFIDF(String sentence) {
         if (sentence == null || sentence.trim().isEmpty()) {
@@ -197,19 +384,81 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         for (String word : words) {
             if (!vocab.containsKey(word)) continue;
             int idx = vocab.get(word);
-            int docCount = 0;
-            for (String doc : corpus) {
-                if (doc.toLowerCase().contains(word)) {
-                    docCount++;
-                }
-            }
-            double idf = Math.log((double) corpus.size() / (docCount + 1));
+            int docCount = documentFrequency(word);
+            double idf = Math.log((double) corpusSize / (docCount + 1));
             vec[idx] *= idf;
         }
         
         return vec;
     }
     
+    /**
+     * computeTFIDF of the handle's text, kept sparse: vocabulary ids in ascending order with their
+     * weights, so scoring a candidate neither decodes its text nor allocates a vocabulary-sized vector.
+     */
+    private TermVector termVector(int handle) {
+        TermVector vector = termVectors[handle];
+        if (vector == null) {
+            TreeMap<Integer, String> words = new TreeMap<>();
+            Map<Integer, Integer> counts = new HashMap<>();
+            for (String word : arena.get(handle).toLowerCase().split("\\s+")) {
+                Integer idx = vocab.get(word);
+                if (idx != null) {
+                    words.put(idx, word);
+                    counts.merge(idx, 1, Integer::sum);
+                }
+            }
+            int[] terms = new int[words.size()];
+            double[] weights = new double[terms.length];
+            double normSquared = 0.0;
+            int i = 0;
+            for (Map.Entry<Integer, String> entry : words.entrySet()) {
+                int count = counts.get(entry.getKey());
+                double idf = Math.log((double) corpusSize / (documentFrequency(entry.getValue()) + 1));
+                // computeTFIDF scales a term by idf once per occurrence.
+                double weight = count;
+                for (int k = 0; k < count; k++) {
+                    weight *= idf;
+                }
+                terms[i] = entry.getKey();
+                weights[i] = weight;
+                normSquared += weight * weight;
+                i++;
+            }
+            vector = new TermVector(terms, weights, normSquared);
+            termVectors[handle] = vector;
+        }
+        return vector;
+    }
+
+    private static final class TermVector {
+        final int[] terms;
+        final double[] weights;
+        final double normSquared;
+
+        TermVector(int[] terms, double[] weights, double normSquared) {
+            this.terms = terms;
+            this.weights = weights;
+            this.normSquared = normSquared;
+        }
+    }
+
+    // Corpus documents whose lowercased text contains word (as a substring), repeats counted.
+    private int documentFrequency(String word) {
+        Integer cached = documentFrequency.get(word);
+        if (cached != null) {
+            return cached;
+        }
+        int docCount = 0;
+        for (int handle = 0; handle < corpusCounts.length; handle++) {
+            if (corpusCounts[handle] > 0 && arena.get(handle).toLowerCase().contains(word)) {
+                docCount += corpusCounts[handle];
+            }
+        }
+        documentFrequency.put(word, docCount);
+        return docCount;
+    }
+    
     public void resetConversation() {
         conversationHistory.clear();
         currentState = null;
@@ -220,81 +469,110 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
     }
     
     public String generate(String intent, double price, String opponentLastMessage) {
+        long start = Metrics.start();
         String normalizedIntent = normalizeIntent(intent);
-        List<String> candidates = utterancesByIntent.get(normalizedIntent);
+        int[] candidates = utterancesByIntent.get(normalizedIntent);
         
-        if (candidates == null || candidates.isEmpty()) {
+        if (candidates == null || candidates.length == 0) {
+            Metrics.increment(Counter.GENERATE_FALLBACKS);
+            Metrics.record(Stage.GENERATE, start);
             return getFallbackDialogue(normalizedIntent, price);
         }
         
-        List<String> filteredCandidates = filterByContext(candidates, normalizedIntent, price, opponentLastMessage);
+        long filterStart = Metrics.start();
+        int[] filteredCandidates;
+        if (candidateCache != null) {
+            // The pool depends only on the key's inputs; the pick and the price below still vary per call.
+            String key = cacheKey(normalizedIntent, opponentLastMessage);
+            filteredCandidates = candidateCache.get(key);
+            if (filteredCandidates == null) {
+                filteredCandidates = filterByContext(candidates, itemPool(normalizedIntent, candidates),
+                                                     normalizedIntent, price, opponentLastMessage);
+                candidateCache.put(key, filteredCandidates);
+            }
+        } else {
+            filteredCandidates = filterByContext(candidates, itemPool(normalizedIntent, candidates),
+                                                 normalizedIntent, price, opponentLastMessage);
+        }
+        Metrics.record(Stage.CANDIDATE_FILTER, filterStart);
         
-        if (filteredCandidates.isEmpty()) {
+        if (filteredCandidates.length == 0) {
+            Metrics.increment(Counter.CANDIDATE_POOL_FALLBACKS);
             filteredCandidates = candidates;
         }
         
-        String template = filteredCandidates.get(random.nextInt(filteredCandidates.size()));
-        return replacePrice(template, price);
+        int handle = filteredCandidates[random.nextInt(filteredCandidates.length)];
+        long renderStart = Metrics.start();
+        String text = template(handle).render(price);
+        Metrics.record(Stage.TEMPLATE_RENDER, renderStart);
+        Metrics.record(Stage.GENERATE, start);
+        return text;
+    }
+
+    // Seller messages that differ only in amounts, case or spacing share a key.
+    private String cacheKey(String intent, String opponentMessage) {
+        String message = "";
+        if (opponentMessage != null) {
+            message = AMOUNT.matcher(opponentMessage.trim().toLowerCase()).replaceAll("<price>");
+            message = WHITESPACE.matcher(message).replaceAll(" ");
+        }
+        return intent + '\u0001' + (itemContext != null ? itemContext : "") + '\u0001' + message;
+    }
+    
+    // The pool cache shared by this generator's sessions, or null when it is disabled.
+    public CandidateCache getCandidateCache() {
+        return candidateCache;
     }
 
-    private double cosine(double[] a, double[] b) {
-        double dot = 0.0, normA = 0.0, normB = 0.0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
+    // Same sums as the dense cosine over computeTFIDF vectors: the candidate's zero terms add nothing.
+    private double cosine(TermVector a, double[] b, double normB) {
+        double dot = 0.0;
+        for (int i = 0; i < a.terms.length; i++) {
+            dot += a.weights[i] * b[a.terms[i]];
         }
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+        return dot / (Math.sqrt(a.normSquared) * Math.sqrt(normB));
     }
  
-    private List<String> filterByContext(List<String> candidates, String intent, double price, String opponentMessage) {
-        List<String> filtered = new ArrayList<>();
-        
+    // pool is candidates narrowed to the item context (itemPool), so none of it is an item mismatch.
+    private int[] filterByContext(int[] candidates, int[] pool, String intent, double price, String opponentMessage) {
         if (opponentMessage == null || opponentMessage.trim().isEmpty()) {
-            // No opponent text to match against; still avoid obvious item-mismatch candidates if we have an item context.
-            if (itemContextTokens != null && !itemContextTokens.isEmpty()) {
-                for (String candidate : candidates) {
-                    if (!shouldExcludeCandidateForItemMismatch(candidate)) {
-                        filtered.add(candidate);
-                    }
-                }
-                return filtered.isEmpty() ? candidates : filtered;
-            }
-            return candidates;
+            // No opponent text to match against; still avoid obvious item-mismatch candidates (the pool already does).
+            return pool.length == 0 ? candidates : pool;
         }
+        int[] filtered = new int[pool.length];
+        int kept = 0;
         
         // Anchor similarity on both the opponent message and the item context (when available)
         String query = opponentMessage;
         if (itemContext != null && !itemContext.trim().isEmpty()) {
             query = query + " " + itemContext;
         }
+        long scoringStart = Metrics.start();
         double[] opponentVec = computeTFIDF(query);
+        double opponentNorm = 0.0;
+        for (double w : opponentVec) {
+            opponentNorm += w * w;
+        }
+        int scored = 0;
         
-        for (String candidate : candidates) {
-            if (shouldExcludeCandidateForItemMismatch(candidate)) {
-                continue;
-            }
-            double[] candidateVec = computeTFIDF(candidate);
-            double similarity = cosine(candidateVec, opponentVec);
+        for (int handle : pool) {
+            double similarity = cosine(termVector(handle), opponentVec, opponentNorm);
+            scored++;
             
             if (similarity > 0.3) {
-                filtered.add(candidate);
+                filtered[kept++] = handle;
             }
         }
+        Metrics.add(Counter.CANDIDATES_SCORED, scored);
+        Metrics.record(Stage.TFIDF_SCORING, scoringStart);
         
-        if (filtered.isEmpty()) {
+        if (kept == 0) {
             // If similarity filtering yields nothing, prefer "safe" candidates (no obvious other-item mentions)
             // over falling back to the full pool (which is how off-topic items leak in).
-            List<String> safe = new ArrayList<>();
-            for (String candidate : candidates) {
-                if (!shouldExcludeCandidateForItemMismatch(candidate)) {
-                    safe.add(candidate);
-                }
-            }
-            return safe.isEmpty() ? candidates : safe;
+            return pool.length == 0 ? candidates : pool;
         }
         
-        return filtered;
+        return Arrays.copyOf(filtered, kept);
     }
     
     private double calculateRelevance(String utterance, String intent, double price, String opponentMessage) {
@@ -371,49 +649,25 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         return 0.0;
     }
     
-    private String replacePrice(String utterance, double targetPrice) {
-        java.util.regex.Matcher matcher = pricePattern.matcher(utterance);
-        String priceStr = "$" + String.format("%.2f", targetPrice);
-        String result = matcher.replaceAll(java.util.regex.Matcher.quoteReplacement(priceStr));
-        
-        if (!result.contains("$")) {
-            if (utterance.toLowerCase().contains("how about") || utterance.toLowerCase().contains("offer")) {
-                result = result.trim();
-                if (!result.endsWith(".") && !result.endsWith("?") && !result.endsWith("!")) {
-                    result += " " + priceStr + "?";
-                } else {
-                    result = result.substring(0, result.length() - 1) + " " + priceStr + result.substring(result.length() - 1);
-                }
-            } else if (utterance.toLowerCase().contains("deal") || utterance.toLowerCase().contains("accept")) {
-                result = result.trim();
-                if (!result.endsWith(".") && !result.endsWith("?") && !result.endsWith("!")) {
-                    result += " for " + priceStr + ".";
-                }
-            }
-        }
-        
-        return result.trim();
-    }
-    
-    private String getFallbackDialogue(String intent, double price) {
+    public String getFallbackDialogue(String intent, double price) {
         switch (intent) {
             case "OFFER":
                 if (currentState != null && currentState.getRound() == 1) {
-                    return "I'm interested in buying this. I can offer $" + String.format("%.2f", price) + ".";
+                    return "I'm interested in buying this. I can offer " + PriceFormat.dollars(price) + ".";
                 }
-                return "I can offer you $" + String.format("%.2f", price) + ".";
+                return "I can offer you " + PriceFormat.dollars(price) + ".";
             case "COUNTER":
                 if (currentState != null && currentState.getRound() > 3) {
-                    return "My final offer is $" + String.format("%.2f", price) + ".";
+                    return "My final offer is " + PriceFormat.dollars(price) + ".";
                 }
-                return "How about $" + String.format("%.2f", price) + "?";
+                return "How about " + PriceFormat.dollars(price) + "?";
             case "REJECT":
                 if (currentState != null && currentState.getOpponentLastOffer() > currentState.getLastOfferPrice()) {
-                    return "That's too high for me. I can't do $" + String.format("%.2f", price) + ".";
+                    return "That's too high for me. I can't do " + PriceFormat.dollars(price) + ".";
                 }
-                return "I can't do $" + String.format("%.2f", price) + ", that's too high.";
+                return "I can't do " + PriceFormat.dollars(price) + ", that's too high.";
             case "ACCEPT":
-                return "Deal! $" + String.format("%.2f", price) + " works for me.";
+                return "Deal! " + PriceFormat.dollars(price) + " works for me.";
             default:
                 return "I'm interested in this item.";
         }
@@ -423,8 +677,14 @@ public class ContextualDialogueGenerator implements DialogueGenerator {
         return new ArrayList<>(conversationHistory);
     }
     
+    public void restoreConversation(List<String> history) {
+        conversationHistory.clear();
+        conversationHistory.addAll(history);
+    }
+    
     @Override
     public void setItemContext(String item) {
+        itemPools.clear();
         if (item == null) {
             this.itemContext = null;
             this.itemContextTokens = new HashSet<>();
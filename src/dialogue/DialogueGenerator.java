@@ -1,5 +1,6 @@
 package dialogue;
 
+import java.util.List;
 import models.NegotiationState;
 
 public interface DialogueGenerator {
@@ -8,4 +9,10 @@ public interface DialogueGenerator {
     void updateContext(NegotiationState state, String lastMessage);
     void resetConversation();
     void setItemContext(String item);
+    String getFallbackDialogue(String intent, double price);
+    List<String> getConversationHistory();
+    // Replaces the conversation history, e.g. when resuming a checkpointed session.
+    void restoreConversation(List<String> history);
+    // A generator over the same loaded model with its own conversation state, for concurrent sessions.
+    DialogueGenerator newSession();
 }
@@ -1,38 +1,87 @@
 package dialogue;
 
 import data.DatasetParser;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Stage;
 import models.NegotiationState;
+import util.Log;
+import util.PriceFormat;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class MarkovDialogueGenerator implements DialogueGenerator {
     
     private Map<String, Map<String, List<String>>> markovModels;
-    private Map<String, List<String>> seedUtterances;
+    // Seed text lives once in the arena; per intent we keep handles, repeats included.
+    private UtteranceArena arena;
+    private Map<String, int[]> seedUtterances;
+    // Keyword flags per handle (see calculateSeedRelevance); seeds without USABLE are shorter than the model order.
+    private short[] seedFlags;
+    // Price templates by handle, compiled on first use (immutable, so a racy publish is harmless).
+    private PriceTemplate[] seedTemplates;
+    // Opening context for the rare seeds that carry a <CONTEXT> placeholder.
+    private Map<Integer, String> seedContexts;
     private Random random;
-    private Pattern pricePattern;
     private List<String> conversationHistory;
     private NegotiationState currentState;
     private int order;
     private String itemContext;
     
+    // seedFlags bits.
+    private static final short USABLE = 1;
+    private static final short BLUFF = 1 << 1;
+    private static final short RAISE = 1 << 2;
+    private static final short MEET = 1 << 3;
+    private static final short LOWER = 1 << 4;
+    private static final short CLOSING = 1 << 5;
+    private static final short TOO_HIGH = 1 << 6;
+    private static final short QUESTION = 1 << 7;
+    private static final short FINAL = 1 << 8;
+    
     public MarkovDialogueGenerator(String datasetPath, int order) throws Exception {
+        this(new DatasetParser().parseBuyerExamples(datasetPath), order);
+    }
+    
+    // Builds from examples that were already parsed, e.g. shared with another generator.
+    public MarkovDialogueGenerator(List<DatasetParser.NegotiationExample> examples, int order) {
+        long start = Metrics.start();
         this.random = new Random();
-        this.pricePattern = Pattern.compile("\\$?\\s*(\\d+(\\.\\d{1,2})?)");
         this.conversationHistory = new ArrayList<>();
         this.order = order;
         this.itemContext = "";
-        buildMarkovModels(datasetPath);
+        buildMarkovModels(examples);
+        Metrics.record(Stage.MARKOV_BUILD, start);
+    }
+    
+    // Shares the built (read-only) models and seeds; conversation state starts fresh.
+    private MarkovDialogueGenerator(MarkovDialogueGenerator shared) {
+        this.random = new Random();
+        this.conversationHistory = new ArrayList<>();
+        this.order = shared.order;
+        this.itemContext = "";
+        this.markovModels = shared.markovModels;
+        this.arena = shared.arena;
+        this.seedUtterances = shared.seedUtterances;
+        this.seedFlags = shared.seedFlags;
+        this.seedTemplates = shared.seedTemplates;
+        this.seedContexts = shared.seedContexts;
+    }
+    
+    @Override
+    public DialogueGenerator newSession() {
+        return new MarkovDialogueGenerator(this);
+    }
+    
+    // For reproducible output, e.g. benchmarks and evaluation runs.
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
     }
     
     public void setItemContext(String item) {
         this.itemContext = item != null ? item.toLowerCase() : "";
     }
     
-    private void buildMarkovModels(String datasetPath) throws Exception {
-        DatasetParser parser = new DatasetParser();
-        List<DatasetParser.NegotiationExample> examples = parser.parseBuyerExamples(datasetPath);
-        
+    private void buildMarkovModels(List<DatasetParser.NegotiationExample> examples) {
         Map<String, List<String>> utterancesByIntent = new HashMap<>();
         seedUtterances = new HashMap<>();
         
@@ -48,22 +97,88 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
         }
         
         markovModels = new HashMap<>();
+        arena = new UtteranceArena();
+        seedFlags = new short[64];
+        seedContexts = new HashMap<>();
         
         for (Map.Entry<String, List<String>> entry : utterancesByIntent.entrySet()) {
             String intent = entry.getKey();
             List<String> utterances = entry.getValue();
             
-            seedUtterances.put(intent, new ArrayList<>(utterances));
+            seedUtterances.put(intent, compileSeeds(utterances));
             
             Map<String, List<String>> transitions = buildNGrams(utterances, order);
             markovModels.put(intent, transitions);
         }
+        arena.seal();
+        seedFlags = Arrays.copyOf(seedFlags, arena.size());
+        seedTemplates = new PriceTemplate[arena.size()];
         
-        System.out.println("Built Markov models by intent:");
-        for (Map.Entry<String, Map<String, List<String>>> entry : markovModels.entrySet()) {
-            System.out.println("  " + entry.getKey() + ": " + entry.getValue().size() + " transitions, " + 
-                             seedUtterances.get(entry.getKey()).size() + " seed utterances");
+        if (Log.isEnabled(Log.Level.INFO)) {
+            StringBuilder summary = new StringBuilder("Built Markov models by intent (transitions/seeds):");
+            for (Map.Entry<String, Map<String, List<String>>> entry : markovModels.entrySet()) {
+                summary.append(' ').append(entry.getKey()).append('=').append(entry.getValue().size())
+                       .append('/').append(seedUtterances.get(entry.getKey()).length);
+            }
+            summary.append(" (").append(arena.size()).append(" distinct, ").append(arena.byteSize()).append(" bytes)");
+            Log.info("MarkovDialogueGenerator", summary.toString());
+        }
+    }
+    
+    private int[] compileSeeds(List<String> utterances) {
+        int[] handles = new int[utterances.size()];
+        for (int i = 0; i < handles.length; i++) {
+            String utterance = utterances.get(i);
+            int distinct = arena.size();
+            int handle = arena.intern(utterance);
+            handles[i] = handle;
+            if (handle < distinct) continue;
+            if (handle == seedFlags.length) {
+                seedFlags = Arrays.copyOf(seedFlags, handle * 2);
+            }
+            short flags = keywordFlags(utterance.toLowerCase());
+            List<String> tokens = tokenize(utterance);
+            if (tokens.size() >= order) {
+                flags |= USABLE;
+                if (order > 1 && utterance.contains("<CONTEXT>")) {
+                    seedContexts.put(handle, String.join(" ", tokens.subList(0, order - 1)));
+                }
+            }
+            seedFlags[handle] = flags;
+        }
+        return handles;
+    }
+    
+    // The keyword tests calculateSeedRelevance makes, done once per distinct seed.
+    private static short keywordFlags(String lowerSeed) {
+        int flags = 0;
+        if (lowerSeed.contains("budget") || lowerSeed.contains("can't afford") ||
+            lowerSeed.contains("other") || lowerSeed.contains("elsewhere") ||
+            lowerSeed.contains("firm") || lowerSeed.contains("final")) {
+            flags |= BLUFF;
+        }
+        if (lowerSeed.contains("higher") || lowerSeed.contains("more") || lowerSeed.contains("increase")) {
+            flags |= RAISE;
+        }
+        if (lowerSeed.contains("meet") || lowerSeed.contains("halfway") || lowerSeed.contains("middle")) {
+            flags |= MEET;
+        }
+        if (lowerSeed.contains("lower")) {
+            flags |= LOWER;
+        }
+        if (lowerSeed.contains("final") || lowerSeed.contains("best") || lowerSeed.contains("last")) {
+            flags |= CLOSING;
+        }
+        if (lowerSeed.contains("high") || lowerSeed.contains("too much") || lowerSeed.contains("expensive")) {
+            flags |= TOO_HIGH;
         }
+        if (lowerSeed.contains("?")) {
+            flags |= QUESTION;
+        }
+        if (lowerSeed.contains("final")) {
+            flags |= FINAL;
+        }
+        return (short) flags;
     }
     
     private Map<String, List<String>> buildNGrams(List<String> utterances, int n) {
@@ -160,35 +275,51 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
         currentState = null;
     }
     
+    public void restoreConversation(List<String> history) {
+        conversationHistory.clear();
+        conversationHistory.addAll(history);
+    }
+    
     public String generate(String intent, double price) {
         return generate(intent, price, null);
     }
     
     public String generate(String intent, double price, String opponentMessage) {
+        long start = Metrics.start();
         String normalizedIntent = normalizeIntent(intent);
         
-        List<String> seedCandidates = seedUtterances.get(normalizedIntent);
+        int[] seedCandidates = seedUtterances.get(normalizedIntent);
         
-        if (seedCandidates == null || seedCandidates.isEmpty()) {
+        if (seedCandidates == null || seedCandidates.length == 0) {
+            Metrics.increment(Counter.GENERATE_FALLBACKS);
+            Metrics.record(Stage.GENERATE, start);
             return getFallbackDialogue(normalizedIntent, price);
         }
         
-        List<String> filteredSeeds = filterSeedsByContext(seedCandidates, normalizedIntent, price, opponentMessage);
+        long filterStart = Metrics.start();
+        int[] filteredSeeds = filterSeedsByContext(seedCandidates, normalizedIntent, price, opponentMessage);
+        Metrics.record(Stage.CANDIDATE_FILTER, filterStart);
         
-        if (filteredSeeds.isEmpty()) {
+        if (filteredSeeds.length == 0) {
+            Metrics.increment(Counter.CANDIDATE_POOL_FALLBACKS);
             filteredSeeds = seedCandidates;
         }
         
         int maxAttempts = 5;
         for (int i = 0; i < maxAttempts; i++) {
-            String seed = filteredSeeds.get(random.nextInt(Math.min(50, filteredSeeds.size())));
+            int seed = filteredSeeds[random.nextInt(Math.min(50, filteredSeeds.length))];
+            long renderStart = Metrics.start();
             String generated = generateFromSeed(seed, normalizedIntent, price);
+            Metrics.record(Stage.TEMPLATE_RENDER, renderStart);
             
             if (isValidGeneration(generated, price)) {
+                Metrics.record(Stage.GENERATE, start);
                 return generated;
             }
         }
         
+        Metrics.increment(Counter.GENERATE_FALLBACKS);
+        Metrics.record(Stage.GENERATE, start);
         return getFallbackDialogue(normalizedIntent, price);
     }
     
@@ -205,7 +336,7 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
             return false;
         }
         
-        String priceStr = String.format("%.2f", price);
+        String priceStr = PriceFormat.format(price);
         if (!text.contains(priceStr) && !text.contains("$")) {
             if (text.toLowerCase().contains("offer") || text.toLowerCase().contains("how about")) {
                 return false;
@@ -215,26 +346,24 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
         return true;
     }
     
-    private List<String> filterSeedsByContext(List<String> seeds, String intent, double price, String opponentMessage) {
-        if (seeds == null || seeds.isEmpty()) return new ArrayList<>();
-        List<String> itemsFiltered = new ArrayList<>(); 
+    private int[] filterSeedsByContext(int[] seeds, String intent, double price, String opponentMessage) {
+        if (seeds == null || seeds.length == 0) return new int[0];
+        int[] itemsFiltered = new int[seeds.length];
+        int kept = 0;
         
-        for (String seed : seeds) {
-            if (calculateSeedRelevance(seed, intent, price, opponentMessage) > 0.5) {
-                itemsFiltered.add(seed);
+        for (int seed : seeds) {
+            if (calculateSeedRelevance(seedFlags[seed], intent, price, opponentMessage) > 0.5) {
+                itemsFiltered[kept++] = seed;
             }
         }
-        return itemsFiltered;
+        return Arrays.copyOf(itemsFiltered, kept);
 
     }
     
-    private double calculateSeedRelevance(String seed, String intent, double price, String opponentMessage) {
+    private double calculateSeedRelevance(short flags, String intent, double price, String opponentMessage) {
         double score = 0.5;
-        String lowerSeed = seed.toLowerCase();
         
-        boolean isBluff = lowerSeed.contains("budget") || lowerSeed.contains("can't afford") || 
-                         lowerSeed.contains("other") || lowerSeed.contains("elsewhere") ||
-                         lowerSeed.contains("firm") || lowerSeed.contains("final");
+        boolean isBluff = (flags & BLUFF) != 0;
         
         if (isBluff && random.nextDouble() < 0.4) {
             score += 0.3;
@@ -246,18 +375,18 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
             
             if (intent.equals("COUNTER") || intent.equals("OFFER")) {
                 if (price > lastOffer) {
-                    if (lowerSeed.contains("higher") || lowerSeed.contains("more") || lowerSeed.contains("increase")) {
+                    if ((flags & RAISE) != 0) {
                         score += 0.2;
                     }
-                    if (lowerSeed.contains("meet") || lowerSeed.contains("halfway") || lowerSeed.contains("middle")) {
+                    if ((flags & MEET) != 0) {
                         score += 0.15;
                     }
-                } else if (price < lastOffer && lowerSeed.contains("lower")) {
+                } else if (price < lastOffer && (flags & LOWER) != 0) {
                     score += 0.2;
                 }
                 
                 if (currentState.getRound() > 5) {
-                    if (lowerSeed.contains("final") || lowerSeed.contains("best") || lowerSeed.contains("last")) {
+                    if ((flags & CLOSING) != 0) {
                         score += 0.2;
                     }
                 }
@@ -269,7 +398,7 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
             
             if (intent.equals("REJECT")) {
                 if (opponentOffer > lastOffer * 1.5) {
-                    if (lowerSeed.contains("high") || lowerSeed.contains("too much") || lowerSeed.contains("expensive")) {
+                    if ((flags & TOO_HIGH) != 0) {
                         score += 0.3;
                     }
                 }
@@ -278,10 +407,10 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
         
         if (opponentMessage != null) {
             String lowerOpponent = opponentMessage.toLowerCase();
-            if (lowerOpponent.contains("?") && lowerSeed.contains("?")) {
+            if (lowerOpponent.contains("?") && (flags & QUESTION) != 0) {
                 score += 0.1;
             }
-            if (lowerOpponent.contains("final") && lowerSeed.contains("final")) {
+            if (lowerOpponent.contains("final") && (flags & FINAL) != 0) {
                 score += 0.15;
             }
             if (lowerOpponent.contains("no") || lowerOpponent.contains("can't")) {
@@ -294,73 +423,48 @@ public class MarkovDialogueGenerator implements DialogueGenerator {
         return Math.min(score, 1.0);
     }
     
-    private String generateFromSeed(String seedUtterance, String intent, double price) {
+    private String generateFromSeed(int seed, String intent, double price) {
 
         Map<String, List<String>> model = markovModels.get(intent);
 
         if (model == null) return null;
 
-        List<String> tokens = tokenize(seedUtterance);
-        
-        if (tokens.size() < order) return null;
-        List<String> context = tokens.subList(0, order - 1);
-        String generate = replacePrice(seedUtterance, price, context);
-        
-        return generate;
-        
-
-    }
-    
-    private String replacePrice(String utterance, double targetPrice, List<String> context) {
-        java.util.regex.Matcher matcher = pricePattern.matcher(utterance);
-        String priceStr = "$" + String.format("%.2f", targetPrice);
-        String result = matcher.replaceAll(java.util.regex.Matcher.quoteReplacement(priceStr));
-        
-        if (!result.contains("$")) {
-            if (utterance.toLowerCase().contains("how about") || utterance.toLowerCase().contains("offer")) {
-                result = result.trim();
-                if (!result.endsWith(".") && !result.endsWith("?") && !result.endsWith("!")) {
-                    result += " " + priceStr + "?";
-                } else {
-                    result = result.substring(0, result.length() - 1) + " " + priceStr + result.substring(result.length() - 1);
-                }
-            } else if (utterance.toLowerCase().contains("deal") || utterance.toLowerCase().contains("accept")) {
-                result = result.trim();
-                if (!result.endsWith(".") && !result.endsWith("?") && !result.endsWith("!")) {
-                    result += " for " + priceStr + ".";
-                }
-            }
+        if ((seedFlags[seed] & USABLE) == 0) return null;
+        PriceTemplate template = seedTemplates[seed];
+        if (template == null) {
+            template = PriceTemplate.compile(arena.get(seed));
+            seedTemplates[seed] = template;
         }
 
-        if(!context.isEmpty()) {
-            String contextStr = String.join(" ", context);
-            result = result.replaceAll("\\b<CONTEXT>\\b", contextStr);
+        String result = template.render(price);
+        String context = seedContexts.get(seed);
+        if (context != null) {
+            result = result.replaceAll("\\b<CONTEXT>\\b", context).trim();
         }
-        
-        return result.trim();
+        return result;
     }
     
-    private String getFallbackDialogue(String intent, double price) {
+    public String getFallbackDialogue(String intent, double price) {
         String item = !itemContext.isEmpty() ? itemContext : "this";
         
         switch (intent) {
             case "OFFER":
                 if (currentState != null && currentState.getRound() == 1) {
-                    return "I'm interested in " + item + ". I can offer $" + String.format("%.2f", price) + ".";
+                    return "I'm interested in " + item + ". I can offer " + PriceFormat.dollars(price) + ".";
                 }
-                return "I can offer you $" + String.format("%.2f", price) + " for " + item + ".";
+                return "I can offer you " + PriceFormat.dollars(price) + " for " + item + ".";
             case "COUNTER":
                 if (currentState != null && currentState.getRound() > 5) {
-                    return "I really can't go higher than $" + String.format("%.2f", price) + ". That's my final offer.";
+                    return "I really can't go higher than " + PriceFormat.dollars(price) + ". That's my final offer.";
                 }
-                return "How about $" + String.format("%.2f", price) + "?";
+                return "How about " + PriceFormat.dollars(price) + "?";
             case "REJECT":
                 if (currentState != null && currentState.getConsecutiveRejects() > 1) {
-                    return "I found " + item + " elsewhere for less. I'll stick with $" + String.format("%.2f", price) + ".";
+                    return "I found " + item + " elsewhere for less. I'll stick with " + PriceFormat.dollars(price) + ".";
                 }
-                return "That's too high. I can only do $" + String.format("%.2f", price) + ".";
+                return "That's too high. I can only do " + PriceFormat.dollars(price) + ".";
             case "ACCEPT":
-                return "Deal! $" + String.format("%.2f", price) + " works for me.";
+                return "Deal! " + PriceFormat.dollars(price) + " works for me.";
             default:
                 return "I'm interested in " + item + ".";
         }
@@ -0,0 +1,114 @@
+package dialogue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import util.PriceFormat;
+
+/**
+ * A candidate utterance pre-parsed into literal text and price slots.
+ *
+ * Compiling applies the generators' price-substitution rules once: every price mention becomes
+ * a slot, and an utterance with no "$" at all gets a price appended ("how about"/"offer" lines)
+ * or a " for $X." suffix ("deal"/"accept" lines). Rendering then only concatenates the literals
+ * with the formatted price, producing the same text the per-turn regex replacement did.
+ */
+public final class PriceTemplate {
+
+    static final Pattern PRICE_PATTERN = Pattern.compile("\\$?\\s*(\\d+(\\.\\d{1,2})?)");
+
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    // literals.length == slots + 1; a price goes between each consecutive pair.
+    private final String[] literals;
+    private final int length;
+
+    private PriceTemplate(List<String> literals) {
+        this.literals = literals.toArray(new String[0]);
+        int total = 0;
+        for (String literal : this.literals) {
+            total += literal.length();
+        }
+        this.length = total;
+    }
+
+    public static PriceTemplate compile(String utterance) {
+        List<String> parts = new ArrayList<>();
+        Matcher matcher = PRICE_PATTERN.matcher(utterance);
+        int last = 0;
+        while (matcher.find()) {
+            parts.add(utterance.substring(last, matcher.start()));
+            last = matcher.end();
+        }
+        parts.add(utterance.substring(last));
+
+        if (parts.size() == 1 && utterance.indexOf('$') < 0) {
+            String lower = utterance.toLowerCase();
+            String text = utterance.trim();
+            if (lower.contains("how about") || lower.contains("offer")) {
+                parts.clear();
+                if (!endsWithPunctuation(text)) {
+                    parts.add(text + " ");
+                    parts.add("?");
+                } else {
+                    parts.add(text.substring(0, text.length() - 1) + " ");
+                    parts.add(text.substring(text.length() - 1));
+                }
+            } else if ((lower.contains("deal") || lower.contains("accept")) && !endsWithPunctuation(text)) {
+                parts.clear();
+                parts.add(text + " for ");
+                parts.add(".");
+            }
+        }
+
+        // The rendered text is trimmed; prices never start or end with whitespace, so only the outer literals change.
+        if (parts.size() == 1) {
+            parts.set(0, parts.get(0).trim());
+        } else {
+            parts.set(0, trimLeading(parts.get(0)));
+            parts.set(parts.size() - 1, trimTrailing(parts.get(parts.size() - 1)));
+        }
+        return new PriceTemplate(parts);
+    }
+
+    public String render(double price) {
+        if (literals.length == 1) {
+            return literals[0];
+        }
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        return appendTo(sb, price).toString();
+    }
+
+    public StringBuilder appendTo(StringBuilder sb, double price) {
+        sb.ensureCapacity(sb.length() + length + (literals.length - 1) * 12);
+        sb.append(literals[0]);
+        for (int i = 1; i < literals.length; i++) {
+            sb.append('$');
+            PriceFormat.appendTo(sb, price);
+            sb.append(literals[i]);
+        }
+        return sb;
+    }
+
+    private static boolean endsWithPunctuation(String text) {
+        return text.endsWith(".") || text.endsWith("?") || text.endsWith("!");
+    }
+
+    private static String trimLeading(String s) {
+        int start = 0;
+        while (start < s.length() && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return s.substring(start);
+    }
+
+    private static String trimTrailing(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return s.substring(0, end);
+    }
+}
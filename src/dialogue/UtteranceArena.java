@@ -0,0 +1,93 @@
+package dialogue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utterance text stored once, deduplicated, as UTF-8 in a direct (off-heap) buffer.
+ *
+ * Generators refer to utterances by the int handle intern() returns; equal strings get the
+ * same handle. Interning is for the build phase only and is not thread-safe. seal() moves the
+ * bytes off-heap and drops the dedup table, after which the arena is read-only and get() may
+ * be called from any thread. The heap cost per distinct utterance is then two ints instead of
+ * a String with its own byte array, for each copy that used to be held.
+ */
+public final class UtteranceArena {
+
+    private Map<String, Integer> handles = new HashMap<>();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int count;
+    private ByteBuffer bytes;
+
+    public int intern(String text) {
+        if (handles == null) {
+            throw new IllegalStateException("arena is sealed");
+        }
+        Integer existing = handles.get(text);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        offsets[count] = pending.size();
+        lengths[count] = utf8.length;
+        pending.write(utf8, 0, utf8.length);
+        handles.put(text, count);
+        return count++;
+    }
+
+    public UtteranceArena seal() {
+        if (handles != null) {
+            bytes = ByteBuffer.allocateDirect(Math.max(1, pending.size()));
+            bytes.put(pending.toByteArray());
+            bytes.flip();
+            offsets = Arrays.copyOf(offsets, count);
+            lengths = Arrays.copyOf(lengths, count);
+            handles = null;
+            pending = null;
+        }
+        return this;
+    }
+
+    public String get(int handle) {
+        if (handles != null) {
+            throw new IllegalStateException("arena is not sealed");
+        }
+        int offset = offsets[handle];
+        int length = lengths[handle];
+        // Corpus text is almost all ASCII: decode straight to chars, and only go through the
+        // UTF-8 decoder when a multi-byte sequence shows up. Absolute gets keep readers independent.
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.get(offset + i);
+            if (b < 0) {
+                byte[] utf8 = new byte[length];
+                for (int k = 0; k < length; k++) {
+                    utf8[k] = bytes.get(offset + k);
+                }
+                return new String(utf8, StandardCharsets.UTF_8);
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    // Number of distinct utterances.
+    public int size() {
+        return count;
+    }
+
+    // Off-heap bytes used once sealed.
+    public long byteSize() {
+        return bytes != null ? bytes.capacity() : pending.size();
+    }
+}
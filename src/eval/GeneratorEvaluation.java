@@ -0,0 +1,332 @@
+package eval;
+
+import data.DatasetParser;
+import dialogue.CandidateCache;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.DialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import metrics.LatencyHistogram;
+import models.NegotiationState;
+import training.SelfPlayTrainer;
+import util.Log;
+
+/**
+ * Replays held-out dialogues through each dialogue generator and reports reply quality next to
+ * generation latency, so generators and their performance modes can be compared on the same data.
+ *
+ * Every buyer message in the held-out file is one generate() call, given the seller's preceding
+ * message, the intent the dataset parser labels the real reply with, and the price the real reply
+ * named (else the buyer's last price). Per generator the report shows:
+ *   latency     - wall time of generate() (mean, p50, p99, max)
+ *   similarity  - mean token F1 between the generated and the real reply, amounts masked
+ *   price_ok    - of the calls whose real reply names a price, the share stating that price and no other
+ *   leakage     - replies naming an item other than the listing (ContextualDialogueGenerator.mentionsOtherItem)
+ * The real replies are scored too, as a reference row.
+ *
+ * Generators are built from --dataset only. Each held-out dialogue gets a fresh session seeded from
+ * --seed and its index, so runs are reproducible; --warmup N replays everything N times unmeasured.
+ * The contextual generator's candidate cache is emptied before every pass, so warm-up exercises the
+ * same misses as the measured pass; its hit rate over the measured pass is printed below the table.
+ *
+ * Usage: GeneratorEvaluation --heldout dev.json [--dataset train.json] [--generators markov,contextual]
+ *                            [--order 3] [--warmup 1] [--limit N] [--seed S]
+ */
+public class GeneratorEvaluation {
+
+    private static final Pattern DOLLAR_AMOUNT = Pattern.compile("\\$\\s*(\\d+(?:\\.\\d{1,2})?)");
+    private static final Pattern AMOUNT = Pattern.compile("\\$?\\s*\\d+(?:[.,]\\d+)*");
+    private static final Pattern WORD = Pattern.compile("[a-z']+|<amount>");
+
+    // One real buyer reply and what the generator is asked for in its place.
+    private static final class Call {
+        String intent;
+        double price;
+        boolean priced;
+        String sellerMessage;
+        String reference;
+        NegotiationState state;
+    }
+
+    private static final class Dialogue {
+        String item;
+        List<Call> calls = new ArrayList<>();
+    }
+
+    private static final class Score {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long calls;
+        double similarity;
+        long priced;
+        long priceOk;
+        long leaked;
+
+        Score(String name) {
+            this.name = name;
+        }
+
+        void add(Call call, String reply, ContextualDialogueGenerator judge) {
+            calls++;
+            similarity += tokenF1(reply, call.reference);
+            if (call.priced) {
+                priced++;
+                if (statesOnly(reply, call.price)) {
+                    priceOk++;
+                }
+            }
+            if (judge.mentionsOtherItem(reply)) {
+                leaked++;
+            }
+        }
+    }
+
+    /**
+     * Buyer replies of each transcript, with the state a buyer would be in when making them.
+     * Only message-like turns with text count, as in DatasetParser.parseBuyerExamples.
+     */
+    static List<Dialogue> toDialogues(List<DatasetParser.Transcript> transcripts, DatasetParser parser) {
+        List<Dialogue> dialogues = new ArrayList<>();
+        for (DatasetParser.Transcript transcript : transcripts) {
+            Dialogue dialogue = new Dialogue();
+            dialogue.item = transcript.itemTitle;
+            String sellerMessage = null;
+            double lastBuyerPrice = 0.0;
+            double lastSellerPrice = transcript.listPrice;
+            int round = 0;
+            for (DatasetParser.Turn turn : transcript.turns) {
+                if (!"buyer".equals(turn.role)) {
+                    if (turn.text != null) {
+                        sellerMessage = turn.text;
+                    }
+                    if (turn.price > 0) {
+                        lastSellerPrice = turn.price;
+                    }
+                    continue;
+                }
+                if (turn.text == null || turn.text.trim().isEmpty() || !isMessage(turn.action)) {
+                    continue;
+                }
+                round++;
+                Call call = new Call();
+                call.intent = parser.inferIntent(turn.text);
+                call.priced = turn.price > 0;
+                call.price = call.priced ? turn.price
+                           : lastBuyerPrice > 0 ? lastBuyerPrice
+                           : transcript.buyerTarget > 0 ? transcript.buyerTarget
+                           : transcript.listPrice;
+                call.sellerMessage = sellerMessage;
+                call.reference = turn.text.trim();
+                double reservation = transcript.listPrice > 0 ? transcript.listPrice : call.price;
+                double target = transcript.buyerTarget > 0 ? transcript.buyerTarget : call.price;
+                call.state = new NegotiationState(round, lastBuyerPrice, reservation, target, lastSellerPrice, null);
+                dialogue.calls.add(call);
+                if (call.priced) {
+                    lastBuyerPrice = call.price;
+                }
+            }
+            if (!dialogue.calls.isEmpty()) {
+                dialogues.add(dialogue);
+            }
+        }
+        return dialogues;
+    }
+
+    private static boolean isMessage(String action) {
+        return "message".equals(action) || "offer".equals(action) || "utterance".equals(action) || "text".equals(action);
+    }
+
+    static Score evaluate(String name, DialogueGenerator generator, List<Dialogue> dialogues,
+                          ContextualDialogueGenerator judgeModel, long seed) {
+        Score score = new Score(name);
+        CandidateCache cache = cacheOf(generator);
+        if (cache != null) {
+            cache.clear();
+        }
+        for (int i = 0; i < dialogues.size(); i++) {
+            Dialogue dialogue = dialogues.get(i);
+            DialogueGenerator session = generator.newSession();
+            seed(session, seed + i);
+            session.setItemContext(dialogue.item);
+            ContextualDialogueGenerator judge = judge(judgeModel, dialogue);
+            for (Call call : dialogue.calls) {
+                session.updateContext(call.state, call.sellerMessage);
+                long start = System.nanoTime();
+                String reply = session.generate(call.intent, call.price, call.sellerMessage);
+                score.latency.record(System.nanoTime() - start);
+                score.add(call, reply, judge);
+            }
+        }
+        return score;
+    }
+
+    static Score reference(List<Dialogue> dialogues, ContextualDialogueGenerator judgeModel) {
+        Score score = new Score("reference");
+        for (Dialogue dialogue : dialogues) {
+            ContextualDialogueGenerator judge = judge(judgeModel, dialogue);
+            for (Call call : dialogue.calls) {
+                score.add(call, call.reference, judge);
+            }
+        }
+        return score;
+    }
+
+    private static ContextualDialogueGenerator judge(ContextualDialogueGenerator judgeModel, Dialogue dialogue) {
+        ContextualDialogueGenerator judge = (ContextualDialogueGenerator) judgeModel.newSession();
+        judge.setItemContext(dialogue.item);
+        return judge;
+    }
+
+    private static CandidateCache cacheOf(DialogueGenerator generator) {
+        return generator instanceof ContextualDialogueGenerator
+            ? ((ContextualDialogueGenerator) generator).getCandidateCache()
+            : null;
+    }
+
+    private static void seed(DialogueGenerator generator, long seed) {
+        if (generator instanceof MarkovDialogueGenerator) {
+            ((MarkovDialogueGenerator) generator).setSeed(seed);
+        } else if (generator instanceof ContextualDialogueGenerator) {
+            ((ContextualDialogueGenerator) generator).setSeed(seed);
+        }
+    }
+
+    // True when text names at least one dollar amount and every one of them is price.
+    static boolean statesOnly(String text, double price) {
+        if (text == null) return false;
+        Matcher m = DOLLAR_AMOUNT.matcher(text);
+        boolean any = false;
+        while (m.find()) {
+            if (Math.abs(Double.parseDouble(m.group(1)) - price) >= 0.005) {
+                return false;
+            }
+            any = true;
+        }
+        return any;
+    }
+
+    // Harmonic mean of token precision and recall (bag of words, lowercased, amounts masked).
+    static double tokenF1(String candidate, String reference) {
+        List<String> a = tokens(candidate);
+        List<String> b = tokens(reference);
+        if (a.isEmpty() || b.isEmpty()) {
+            return a.isEmpty() && b.isEmpty() ? 1.0 : 0.0;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (String t : b) {
+            counts.merge(t, 1, Integer::sum);
+        }
+        int overlap = 0;
+        for (String t : a) {
+            Integer n = counts.get(t);
+            if (n != null && n > 0) {
+                overlap++;
+                counts.put(t, n - 1);
+            }
+        }
+        if (overlap == 0) return 0.0;
+        double precision = (double) overlap / a.size();
+        double recall = (double) overlap / b.size();
+        return 2 * precision * recall / (precision + recall);
+    }
+
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        Matcher m = WORD.matcher(AMOUNT.matcher(text.toLowerCase()).replaceAll(" <amount> "));
+        while (m.find()) {
+            tokens.add(m.group());
+        }
+        return tokens;
+    }
+
+    private static void printReport(List<Score> scores) {
+        System.out.println(String.format("%-12s %7s %9s %9s %9s %9s %10s %9s %9s",
+            "generator", "calls", "mean_us", "p50_us", "p99_us", "max_us", "similarity", "price_ok%", "leakage%"));
+        for (Score s : scores) {
+            String latency = s.latency.getCount() == 0
+                ? String.format("%9s %9s %9s %9s", "-", "-", "-", "-")
+                : String.format("%9.1f %9.1f %9.1f %9.1f", s.latency.getMeanNanos() / 1000.0,
+                    s.latency.getPercentileNanos(0.50) / 1000.0, s.latency.getPercentileNanos(0.99) / 1000.0,
+                    s.latency.getMaxNanos() / 1000.0);
+            System.out.println(String.format("%-12s %7d %s %10.3f %9.1f %9.1f", s.name, s.calls, latency,
+                s.similarity / Math.max(1, s.calls), 100.0 * s.priceOk / Math.max(1, s.priced),
+                100.0 * s.leaked / Math.max(1, s.calls)));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        if (!opts.containsKey("heldout")) {
+            System.out.println("Usage: GeneratorEvaluation --heldout dev.json [--dataset train.json] " +
+                               "[--generators markov,contextual] [--order 3] [--warmup 1] [--limit N] [--seed S]");
+            return;
+        }
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        String[] names = opts.getOrDefault("generators", "markov,contextual").split(",");
+        int order = Integer.parseInt(opts.getOrDefault("order", "3"));
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "1"));
+        int limit = Integer.parseInt(opts.getOrDefault("limit", String.valueOf(Integer.MAX_VALUE)));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+
+        DatasetParser parser = new DatasetParser();
+        List<Dialogue> dialogues = toDialogues(parser.parseTranscripts(opts.get("heldout")), parser);
+        if (dialogues.size() > limit) {
+            dialogues = dialogues.subList(0, limit);
+        }
+        List<DatasetParser.NegotiationExample> examples = parser.parseBuyerExamples(datasetPath);
+
+        Map<String, DialogueGenerator> generators = new LinkedHashMap<>();
+        ContextualDialogueGenerator judgeModel = null;
+        for (String name : names) {
+            name = name.trim();
+            long start = System.nanoTime();
+            DialogueGenerator generator;
+            if (name.equals("markov")) {
+                generator = new MarkovDialogueGenerator(examples, order);
+            } else if (name.equals("contextual")) {
+                generator = judgeModel = new ContextualDialogueGenerator(examples);
+            } else {
+                throw new IllegalArgumentException("Unknown generator: " + name);
+            }
+            generators.put(name, generator);
+            Log.info("GeneratorEvaluation", "Built " + name + " in " +
+                String.format("%.2f", (System.nanoTime() - start) / 1e9) + "s");
+        }
+        if (judgeModel == null) {
+            judgeModel = new ContextualDialogueGenerator(examples);
+        }
+        Log.flush();
+
+        int calls = 0;
+        int priced = 0;
+        for (Dialogue dialogue : dialogues) {
+            calls += dialogue.calls.size();
+            for (Call call : dialogue.calls) {
+                if (call.priced) priced++;
+            }
+        }
+        System.out.println("=== Generator evaluation ===");
+        System.out.println("Held-out: " + dialogues.size() + " dialogues, " + calls + " buyer replies (" +
+                           priced + " name a price) | Trained on: " + datasetPath + " | Seed: " + seed);
+
+        List<Score> scores = new ArrayList<>();
+        scores.add(reference(dialogues, judgeModel));
+        for (Map.Entry<String, DialogueGenerator> entry : generators.entrySet()) {
+            for (int i = 0; i < warmup; i++) {
+                evaluate(entry.getKey(), entry.getValue(), dialogues, judgeModel, seed);
+            }
+            scores.add(evaluate(entry.getKey(), entry.getValue(), dialogues, judgeModel, seed));
+        }
+        printReport(scores);
+        for (Map.Entry<String, DialogueGenerator> entry : generators.entrySet()) {
+            CandidateCache cache = cacheOf(entry.getValue());
+            if (cache != null) {
+                System.out.println(String.format("%s candidate cache: %d hits, %d misses (%.1f%% hit rate), %d pools",
+                    entry.getKey(), cache.getHits(), cache.getMisses(), 100.0 * cache.getHitRate(), cache.size()));
+            }
+        }
+    }
+}
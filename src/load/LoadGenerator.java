@@ -0,0 +1,526 @@
+package load;
+
+import agents.BuyerAgent;
+import agents.PolicyPublisher;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import data.DatasetParser;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.DialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import metrics.LatencyHistogram;
+import session.NegotiationSession;
+import training.SelfPlayTrainer;
+import training.SellerStrategy;
+import util.PriceFormat;
+
+/**
+ * Load generator: N simulated sellers negotiating with the buyer at once, ramped up in steps.
+ *
+ * Each seller runs its own SellerStrategy (the training simulators) over scenarios drawn like
+ * SelfPlayTrainer's, turns the strategy's prices into chat lines, and waits a random think time
+ * (uniform between half and one and a half times --think-ms) between messages. Sellers are
+ * event-driven rather than thread-per-seller, so thousands of them cost a few threads; each has
+ * at most one request in flight.
+ *
+ * In-process mode drives NegotiationSessions on a worker pool over one shared generator model
+ * and policy, exactly as the server does. TCP mode talks to a running NegotiationServer,
+ * pipelining all sellers over a few connections.
+ *
+ * After each ramp step it prints throughput, turn latency percentiles as the seller sees them
+ * (queueing included), heap use and the GC count and time spent during the step. In TCP mode
+ * heap and GC describe this JVM, not the server's; the server's own stats are printed at the end.
+ *
+ * Usage: LoadGenerator [--mode inprocess|tcp] [--ramp 10,100,500,1000] [--step-seconds 10] [--think-ms 100]
+ *                      [--seller anchoring|concession|dataset|mixed] [--seed S]
+ *                      in-process: [--dataset path] [--generator markov|contextual] [--policy q_table.bin] [--workers N]
+ *                      tcp:        [--host 127.0.0.1] [--port 7878] [--connections 4]
+ */
+public class LoadGenerator {
+
+    private static final String[] ITEMS = {"bike", "couch", "phone", "table", "camera", "desk", "stereo", "apartment"};
+    private static final String[][] SELLER_LINES = {
+        {"I can do ", "."},
+        {"Lowest I'll go is ", "."},
+        {"How about ", "? It's in great shape."},
+        {"No, that's too low. I need at least ", "."},
+        {"I could do ", " if you pick it up."}
+    };
+
+    // Buyer's side of one negotiation as the load generator sees it.
+    static class Reply {
+        final Object session;
+        final double offer;
+        final NegotiationSession.Outcome outcome;
+
+        Reply(Object session, double offer, NegotiationSession.Outcome outcome) {
+            this.session = session;
+            this.offer = offer;
+            this.outcome = outcome;
+        }
+    }
+
+    interface Backend {
+        CompletableFuture<Reply> open(String item, SelfPlayTrainer.Scenario scenario);
+        CompletableFuture<Reply> turn(Object session, String message);
+        void close(Object session);
+        void shutdown();
+    }
+
+    private static class SimulatedSeller {
+        final Random random;
+        final SellerStrategy strategy;
+        final String item;
+        Object session;
+        double buyerOffer;
+        int round;
+
+        SimulatedSeller(Random random, SellerStrategy strategy, String item) {
+            this.random = random;
+            this.strategy = strategy;
+            this.item = item;
+        }
+    }
+
+    private final Backend backend;
+    private final long thinkMillis;
+    private final ScheduledExecutorService scheduler;
+    private final List<SimulatedSeller> sellers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final LatencyHistogram turnLatency = new LatencyHistogram();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder negotiations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLongArray outcomes = new AtomicLongArray(NegotiationSession.Outcome.values().length);
+
+    public LoadGenerator(Backend backend, long thinkMillis) {
+        this.backend = backend;
+        this.thinkMillis = Math.max(0, thinkMillis);
+        this.scheduler = Executors.newScheduledThreadPool(2, daemonThreads("load-scheduler"));
+    }
+
+    public void addSeller(SellerStrategy strategy, long seed) {
+        Random random = new Random(seed);
+        SimulatedSeller seller = new SimulatedSeller(random, strategy, ITEMS[random.nextInt(ITEMS.length)]);
+        sellers.add(seller);
+        // Spread the first messages over one think time so a step doesn't start with a burst.
+        later(thinkMillis > 0 ? (long) (random.nextDouble() * thinkMillis) : 0, () -> open(seller));
+    }
+
+    public int getSellerCount() {
+        return sellers.size();
+    }
+
+    private void later(long delayMillis, Runnable action) {
+        if (!running) {
+            return;
+        }
+        try {
+            scheduler.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        }
+    }
+
+    private long thinkTime(SimulatedSeller seller) {
+        return thinkMillis == 0 ? 0 : (long) (thinkMillis * (0.5 + seller.random.nextDouble()));
+    }
+
+    private void open(SimulatedSeller seller) {
+        SelfPlayTrainer.Scenario scenario = SelfPlayTrainer.sampleScenario(seller.random);
+        seller.strategy.reset(scenario.listPrice, scenario.floorPrice, seller.random);
+        backend.open(seller.item, scenario).whenComplete((reply, error) -> {
+            if (error != null) {
+                errors.increment();
+                later(Math.max(thinkMillis, 10), () -> open(seller));
+                return;
+            }
+            seller.session = reply.session;
+            seller.buyerOffer = reply.offer;
+            seller.round = 1;
+            later(thinkTime(seller), () -> turn(seller));
+        });
+    }
+
+    private void turn(SimulatedSeller seller) {
+        String message;
+        if (seller.strategy.accepts(seller.buyerOffer)) {
+            message = "Deal, " + PriceFormat.dollars(seller.buyerOffer) + " works for me.";
+        } else {
+            double price = seller.strategy.nextPrice(seller.round, seller.buyerOffer);
+            String[] line = SELLER_LINES[seller.random.nextInt(SELLER_LINES.length)];
+            message = line[0] + PriceFormat.dollars(price) + line[1];
+        }
+
+        long sent = System.nanoTime();
+        backend.turn(seller.session, message).whenComplete((reply, error) -> {
+            turnLatency.record(System.nanoTime() - sent);
+            turns.increment();
+            if (error != null) {
+                errors.increment();
+                backend.close(seller.session);
+                later(thinkTime(seller), () -> open(seller));
+                return;
+            }
+            seller.buyerOffer = reply.offer;
+            seller.round++;
+            if (reply.outcome != NegotiationSession.Outcome.ONGOING || seller.round > SelfPlayTrainer.MAX_ROUNDS) {
+                NegotiationSession.Outcome ended = reply.outcome == NegotiationSession.Outcome.ONGOING
+                    ? NegotiationSession.Outcome.ROUND_LIMIT : reply.outcome;
+                outcomes.incrementAndGet(ended.ordinal());
+                negotiations.increment();
+                backend.close(seller.session);
+                later(thinkTime(seller), () -> open(seller));
+            } else {
+                later(thinkTime(seller), () -> turn(seller));
+            }
+        });
+    }
+
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        backend.shutdown();
+    }
+
+    // --- Reporting ---------------------------------------------------------------------------
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    static void printHeader() {
+        System.out.println(String.format("%8s %10s %9s %9s %9s %9s %9s %7s %10s %10s %6s %8s",
+            "sellers", "turns/s", "negs/s", "p50_ms", "p99_ms", "p999_ms", "max_ms", "errors",
+            "heap_mb", "heapmax_mb", "gcs", "gc_ms"));
+    }
+
+    // Runs the current sellers for one step and prints a row for it.
+    public void measureStep(long seconds) throws InterruptedException {
+        turnLatency.reset();
+        long turnsBefore = turns.sum();
+        long negotiationsBefore = negotiations.sum();
+        long errorsBefore = errors.sum();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long start = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.println(String.format("%8d %10.0f %9.1f %9.2f %9.2f %9.2f %9.2f %7d %10.1f %10.1f %6d %8d",
+            sellers.size(),
+            (turns.sum() - turnsBefore) / elapsed,
+            (negotiations.sum() - negotiationsBefore) / elapsed,
+            turnLatency.getPercentileNanos(0.50) / 1e6,
+            turnLatency.getPercentileNanos(0.99) / 1e6,
+            turnLatency.getPercentileNanos(0.999) / 1e6,
+            turnLatency.getMaxNanos() / 1e6,
+            errors.sum() - errorsBefore,
+            heap.getUsed() / (1024.0 * 1024.0),
+            heap.getMax() > 0 ? heap.getMax() / (1024.0 * 1024.0) : heap.getCommitted() / (1024.0 * 1024.0),
+            gcCount() - gcCountBefore,
+            gcMillis() - gcMillisBefore));
+    }
+
+    public void printOutcomes() {
+        StringBuilder counts = new StringBuilder("Outcomes:");
+        for (NegotiationSession.Outcome outcome : NegotiationSession.Outcome.values()) {
+            if (outcome != NegotiationSession.Outcome.ONGOING) {
+                counts.append(' ').append(outcome.name()).append('=').append(outcomes.get(outcome.ordinal()));
+            }
+        }
+        System.out.println(counts);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicLong ids = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // --- Backends ----------------------------------------------------------------------------
+
+    /**
+     * Sessions in this JVM over one shared generator and policy, each turn run on the worker pool.
+     */
+    static class InProcessBackend implements Backend {
+        private final DialogueGenerator generator;
+        private final PolicyPublisher policy;
+        private final ExecutorService workers;
+
+        InProcessBackend(DialogueGenerator generator, PolicyPublisher policy, int workers) {
+            this.generator = generator;
+            this.policy = policy;
+            this.workers = Executors.newFixedThreadPool(Math.max(1, workers), daemonThreads("load-worker"));
+        }
+
+        @Override
+        public CompletableFuture<Reply> open(String item, SelfPlayTrainer.Scenario scenario) {
+            return CompletableFuture.supplyAsync(() -> {
+                BuyerAgent buyer = new BuyerAgent(generator.newSession(), scenario.reservationPrice, scenario.targetPrice);
+                if (policy != null) {
+                    buyer.attachPolicy(policy);
+                }
+                buyer.setItemContext(item);
+                NegotiationSession session = new NegotiationSession(buyer, scenario.listPrice);
+                session.open();
+                return new Reply(session, buyer.getCurrentOffer(), NegotiationSession.Outcome.ONGOING);
+            }, workers);
+        }
+
+        @Override
+        public CompletableFuture<Reply> turn(Object handle, String message) {
+            NegotiationSession session = (NegotiationSession) handle;
+            return CompletableFuture.supplyAsync(() -> {
+                NegotiationSession.TurnResult result = session.turn(message);
+                return new Reply(session, result.buyerOffer, result.outcome);
+            }, workers);
+        }
+
+        @Override
+        public void close(Object session) {
+        }
+
+        @Override
+        public void shutdown() {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * A NegotiationServer over a few pipelined connections; replies are matched to requests by id.
+     */
+    static class TcpBackend implements Backend {
+        private final List<Connection> connections = new ArrayList<>();
+        private final AtomicLong ids = new AtomicLong();
+        private final AtomicLong next = new AtomicLong();
+
+        private class Connection {
+            final Socket socket;
+            final Writer out;
+            final Map<Long, CompletableFuture<JsonObject>> pending = new ConcurrentHashMap<>();
+
+            Connection(String host, int port) throws IOException {
+                socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Thread reader = new Thread(() -> readLoop(in), "load-reader");
+                reader.setDaemon(true);
+                reader.start();
+            }
+
+            private void readLoop(BufferedReader in) {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        JsonObject response = JsonParser.parseString(line).getAsJsonObject();
+                        if (!response.has("id")) {
+                            continue;
+                        }
+                        CompletableFuture<JsonObject> waiting = pending.remove(response.get("id").getAsLong());
+                        if (waiting != null) {
+                            waiting.complete(response);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Connection gone; fail whatever is still waiting below.
+                }
+                for (CompletableFuture<JsonObject> waiting : pending.values()) {
+                    waiting.completeExceptionally(new IOException("connection closed"));
+                }
+            }
+
+            CompletableFuture<JsonObject> send(JsonObject request) {
+                long id = ids.incrementAndGet();
+                request.addProperty("id", id);
+                CompletableFuture<JsonObject> response = new CompletableFuture<>();
+                pending.put(id, response);
+                String json = request.toString();
+                try {
+                    synchronized (out) {
+                        out.write(json);
+                        out.write('\n');
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    pending.remove(id);
+                    response.completeExceptionally(e);
+                }
+                return response;
+            }
+        }
+
+        TcpBackend(String host, int port, int connectionCount) throws IOException {
+            for (int i = 0; i < Math.max(1, connectionCount); i++) {
+                connections.add(new Connection(host, port));
+            }
+        }
+
+        private Connection connection() {
+            return connections.get((int) (next.getAndIncrement() % connections.size()));
+        }
+
+        private static JsonObject checked(JsonObject response) {
+            if (!response.has("ok") || !response.get("ok").getAsBoolean()) {
+                throw new CompletionException(new IOException(
+                    response.has("error") ? response.get("error").getAsString() : "request failed"));
+            }
+            return response;
+        }
+
+        @Override
+        public CompletableFuture<Reply> open(String item, SelfPlayTrainer.Scenario scenario) {
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "open");
+            request.addProperty("item", item);
+            request.addProperty("asking", scenario.listPrice);
+            request.addProperty("reservation", scenario.reservationPrice);
+            request.addProperty("target", scenario.targetPrice);
+            return connection().send(request).thenApply(response -> {
+                checked(response);
+                return new Reply(response.get("session").getAsString(), response.get("offer").getAsDouble(),
+                                 NegotiationSession.Outcome.ONGOING);
+            });
+        }
+
+        @Override
+        public CompletableFuture<Reply> turn(Object session, String message) {
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "turn");
+            request.addProperty("session", (String) session);
+            request.addProperty("message", message);
+            return connection().send(request).thenApply(response -> {
+                checked(response);
+                return new Reply(session, response.get("offer").getAsDouble(),
+                                 NegotiationSession.Outcome.valueOf(response.get("outcome").getAsString()));
+            });
+        }
+
+        @Override
+        public void close(Object session) {
+            if (session == null) {
+                return;
+            }
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "close");
+            request.addProperty("session", (String) session);
+            connection().send(request);
+        }
+
+        String stats() {
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "stats");
+            try {
+                return connection().send(request).get(5, TimeUnit.SECONDS).toString();
+            } catch (Exception e) {
+                return "unavailable (" + e + ")";
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            for (Connection connection : connections) {
+                try {
+                    connection.socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // --- Main --------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        String mode = opts.getOrDefault("mode", "inprocess");
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        String sellerName = opts.getOrDefault("seller", "mixed");
+        long thinkMillis = Long.parseLong(opts.getOrDefault("think-ms", "100"));
+        long stepSeconds = Long.parseLong(opts.getOrDefault("step-seconds", "10"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        List<Integer> ramp = new ArrayList<>();
+        for (String step : opts.getOrDefault("ramp", "10,100,500,1000").split(",")) {
+            ramp.add(Integer.parseInt(step.trim()));
+        }
+
+        List<double[]> trajectories = null;
+        if (sellerName.equals("dataset") || (sellerName.equals("mixed") && new File(datasetPath).isFile())) {
+            trajectories = new DatasetParser().parseSellerPriceTrajectories(datasetPath);
+        }
+
+        Backend backend;
+        if (mode.equals("tcp")) {
+            String host = opts.getOrDefault("host", "127.0.0.1");
+            int port = Integer.parseInt(opts.getOrDefault("port", "7878"));
+            backend = new TcpBackend(host, port, Integer.parseInt(opts.getOrDefault("connections", "4")));
+            System.out.println("Target: NegotiationServer at " + host + ":" + port);
+        } else if (mode.equals("inprocess")) {
+            DialogueGenerator generator = "contextual".equals(opts.get("generator"))
+                ? new ContextualDialogueGenerator(datasetPath)
+                : new MarkovDialogueGenerator(datasetPath, 3);
+            String policyPath = opts.getOrDefault("policy", "q_table.bin");
+            BuyerAgent policySource = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0, policyPath);
+            PolicyPublisher policy = new PolicyPublisher();
+            policy.publishFrom(policySource);
+            int workers = Integer.parseInt(opts.getOrDefault("workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+            backend = new InProcessBackend(generator, policy, workers);
+            System.out.println("Target: in-process, " + workers + " workers, policy " +
+                               policySource.getQTableSize() + " states from " + policyPath);
+        } else {
+            System.out.println("Unknown --mode " + mode + " (expected inprocess or tcp)");
+            return;
+        }
+
+        System.out.println("Sellers: " + sellerName + " | Think time: " + thinkMillis + "ms | Ramp: " + ramp +
+                           " | " + stepSeconds + "s per step | Seed: " + seed);
+        LoadGenerator load = new LoadGenerator(backend, thinkMillis);
+        printHeader();
+        for (int target : ramp) {
+            while (load.getSellerCount() < target) {
+                int index = load.getSellerCount();
+                load.addSeller(SelfPlayTrainer.createSeller(sellerName, trajectories),
+                               seed + 0x9E3779B97F4A7C15L * (index + 1));
+            }
+            load.measureStep(stepSeconds);
+        }
+        load.printOutcomes();
+        if (backend instanceof TcpBackend) {
+            System.out.println("Server stats: " + ((TcpBackend) backend).stats());
+        }
+        load.stop();
+    }
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+/**
+ * Event counts kept next to the stage timings in Metrics.
+ */
+public enum Counter {
+    // Turns whose text came from the fallback template because rendering missed its deadline or failed.
+    RENDER_FALLBACKS,
+    // generate calls that gave up on the model and returned the fallback template.
+    GENERATE_FALLBACKS,
+    // Candidate utterances scored against the seller's message (TF-IDF cosine).
+    CANDIDATES_SCORED,
+    // Filtering left no candidates, so the generator fell back to the unfiltered pool.
+    CANDIDATE_POOL_FALLBACKS,
+    // Candidate pool lookups answered from the contextual generator's cache, and those that had to filter.
+    CANDIDATE_CACHE_HITS,
+    CANDIDATE_CACHE_MISSES,
+    // Pools dropped from the cache to stay within its size bound.
+    CANDIDATE_CACHE_EVICTIONS
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// JMX view of one counter, registered as com.barter:type=Counter,name=<counter>.
+public class CounterStats implements CounterStatsMBean {
+
+    private final LongAdder adder;
+
+    CounterStats(LongAdder adder) {
+        this.adder = adder;
+    }
+
+    @Override
+    public long getValue() {
+        return adder.sum();
+    }
+
+    @Override
+    public void reset() {
+        adder.reset();
+    }
+}
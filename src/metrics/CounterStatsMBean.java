@@ -0,0 +1,6 @@
+package metrics;
+
+public interface CounterStatsMBean {
+    long getValue();
+    void reset();
+}
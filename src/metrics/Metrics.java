@@ -0,0 +1,152 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import util.Log;
+
+/**
+ * Process-wide stage timings and counters for the buyer's turn pipeline.
+ *
+ * Off unless the JVM is started with -Dhaggle.metrics=true. The flag is a static final, so when
+ * it is off the JIT folds every start/record/increment call down to nothing. When on, each
+ * stage is a lock-free LatencyHistogram and each counter a LongAdder; both are registered as
+ * MBeans under com.barter (type=Stage and type=Counter), and -Dhaggle.metrics.dumpSeconds=N
+ * additionally logs a text summary every N seconds.
+ *
+ * Usage at a call site:
+ *   long start = Metrics.start();
+ *   ...
+ *   Metrics.record(Stage.TFIDF_SCORING, start);
+ */
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("haggle.metrics");
+
+    private static final String DOMAIN = "com.barter";
+
+    private static final LatencyHistogram[] STAGES = new LatencyHistogram[Stage.values().length];
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTERS[i] = new LongAdder();
+        }
+        if (ENABLED) {
+            registerMBeans();
+            long dumpSeconds = Long.getLong("haggle.metrics.dumpSeconds", 0L);
+            if (dumpSeconds > 0) {
+                startDump(dumpSeconds);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Start time for record(), or 0 without reading the clock when metrics are off.
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    public static void record(Stage stage, long start) {
+        if (ENABLED) {
+            STAGES[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    public static void increment(Counter counter) {
+        if (ENABLED) {
+            COUNTERS[counter.ordinal()].increment();
+        }
+    }
+
+    public static void add(Counter counter, long amount) {
+        if (ENABLED) {
+            COUNTERS[counter.ordinal()].add(amount);
+        }
+    }
+
+    public static LatencyHistogram histogram(Stage stage) {
+        return STAGES[stage.ordinal()];
+    }
+
+    public static long count(Counter counter) {
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : STAGES) {
+            histogram.reset();
+        }
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * One line per stage that has samples (count, mean and percentiles in microseconds),
+     * then one line with every counter.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-18s %10s %10s %10s %10s %10s %10s%n",
+            "stage", "count", "mean_us", "p50_us", "p99_us", "p999_us", "max_us"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = STAGES[stage.ordinal()];
+            long n = h.getCount();
+            if (n == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.ROOT, "%-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                stage.name().toLowerCase(Locale.ROOT), n, h.getMeanNanos() / 1000.0,
+                h.getPercentileNanos(0.50) / 1000.0, h.getPercentileNanos(0.99) / 1000.0,
+                h.getPercentileNanos(0.999) / 1000.0, h.getMaxNanos() / 1000.0));
+        }
+        sb.append("counters:");
+        for (Counter counter : Counter.values()) {
+            sb.append(' ').append(counter.name().toLowerCase(Locale.ROOT)).append('=')
+              .append(COUNTERS[counter.ordinal()].sum());
+        }
+        return sb.toString();
+    }
+
+    private static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Stage stage : Stage.values()) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Stage,name=" + stage.name().toLowerCase(Locale.ROOT));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(new StageStats(STAGES[stage.ordinal()]), name);
+                }
+            }
+            for (Counter counter : Counter.values()) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Counter,name=" + counter.name().toLowerCase(Locale.ROOT));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(new CounterStats(COUNTERS[counter.ordinal()]), name);
+                }
+            }
+        } catch (JMException e) {
+            Log.warn("Metrics", "Could not register metrics MBeans: " + e.getMessage());
+        }
+    }
+
+    private static void startDump(long periodSeconds) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> Log.info("Metrics", System.lineSeparator() + dump()),
+                                   periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+}
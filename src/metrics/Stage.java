@@ -0,0 +1,23 @@
+package metrics;
+
+/**
+ * Timed stages of a buyer turn and of model loading. Each has its own LatencyHistogram in Metrics.
+ */
+public enum Stage {
+    // BuyerAgent.respondToSeller as a whole, and its parts.
+    TURN,
+    PRICE_INFERENCE,
+    ACTION_SELECTION,
+    RENDER,
+
+    // DialogueGenerator.generate as a whole, and its parts.
+    GENERATE,
+    CANDIDATE_FILTER,
+    TFIDF_SCORING,
+    TEMPLATE_RENDER,
+
+    // Model build.
+    DATASET_PARSE,
+    MARKOV_BUILD,
+    CONTEXTUAL_BUILD
+}
@@ -0,0 +1,11 @@
+package metrics;
+
+public interface StageStatsMBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+    void reset();
+}
@@ -2,8 +2,10 @@ package models;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class NegotiationState {
+    public static final int FEATURE_COUNT = 8;
     private int round;
     private double lastOfferPrice;
     private double myReservationPrice;
@@ -13,40 +15,83 @@ public class NegotiationState {
     private double priceGapPercentage;
     private int consecutiveRejects;
     private boolean dealReached;
-    private List<Double> offerHistory;
+    // Growable primitive history; only boxed when a caller asks for the List view.
+    private double[] offers;
+    private int offerCount;
     
     public NegotiationState(int round, double lastOfferPrice, 
                           double myReservationPrice, double myTargetPrice,
                           double opponentLastOffer, List<Double> offerHistory) {
-        this.round = round;
-        this.lastOfferPrice = lastOfferPrice;
         this.myReservationPrice = myReservationPrice;
         this.myTargetPrice = myTargetPrice;
+        this.offers = new double[Math.max(16, offerHistory != null ? offerHistory.size() : 0)];
+        if (offerHistory != null) {
+            for (Double offer : offerHistory) {
+                offers[offerCount++] = offer;
+            }
+        }
+        update(round, lastOfferPrice, opponentLastOffer);
+        this.consecutiveRejects = 0;
+        this.dealReached = false;
+    }
+    
+    /**
+     * Move to the next round in place, recomputing the derived gap features
+     */
+    public void update(int round, double lastOfferPrice, double opponentLastOffer) {
+        this.round = round;
+        this.lastOfferPrice = lastOfferPrice;
         this.opponentLastOffer = opponentLastOffer;
-        this.offerHistory = offerHistory != null ? new ArrayList<>(offerHistory) : new ArrayList<>();
         
         // Calculate derived features
         this.priceGap = Math.abs(lastOfferPrice - opponentLastOffer);
         double avgPrice = (lastOfferPrice + opponentLastOffer) / 2.0;
         this.priceGapPercentage = avgPrice > 0 ? priceGap / avgPrice : 0.0;
+    }
+    
+    /**
+     * Start over for a new negotiation, reusing the history buffer
+     */
+    public void reset(double myReservationPrice, double myTargetPrice) {
+        this.myReservationPrice = myReservationPrice;
+        this.myTargetPrice = myTargetPrice;
+        this.offerCount = 0;
         this.consecutiveRejects = 0;
         this.dealReached = false;
+        update(0, 0.0, 0.0);
     }
     
     /**
      * Convert state to feature vector for neural network
      */
     public double[] toFeatureVector() {
-        return new double[] {
-            round / 20.0,  // Normalized round
-            lastOfferPrice / 1000.0,  // Normalized price
-            myReservationPrice / 1000.0,
-            myTargetPrice / 1000.0,
-            opponentLastOffer / 1000.0,
-            priceGapPercentage,
-            consecutiveRejects / 5.0,
-            dealReached ? 1.0 : 0.0
-        };
+        double[] features = new double[FEATURE_COUNT];
+        toFeatureVector(features);
+        return features;
+    }
+    
+    public void toFeatureVector(double[] out) {
+        fillFeatureVector(out, round, lastOfferPrice, myReservationPrice, myTargetPrice,
+                          opponentLastOffer, consecutiveRejects, dealReached);
+    }
+    
+    /**
+     * Same features for a hypothetical state, without building a NegotiationState
+     */
+    public static void fillFeatureVector(double[] out, int round, double lastOfferPrice,
+                                         double myReservationPrice, double myTargetPrice,
+                                         double opponentLastOffer, int consecutiveRejects,
+                                         boolean dealReached) {
+        double avgPrice = (lastOfferPrice + opponentLastOffer) / 2.0;
+        double gapPercentage = avgPrice > 0 ? Math.abs(lastOfferPrice - opponentLastOffer) / avgPrice : 0.0;
+        out[0] = round / 20.0;  // Normalized round
+        out[1] = lastOfferPrice / 1000.0;  // Normalized price
+        out[2] = myReservationPrice / 1000.0;
+        out[3] = myTargetPrice / 1000.0;
+        out[4] = opponentLastOffer / 1000.0;
+        out[5] = gapPercentage;
+        out[6] = consecutiveRejects / 5.0;
+        out[7] = dealReached ? 1.0 : 0.0;
     }
     
     // Getters
@@ -59,7 +104,15 @@ public class NegotiationState {
     public double getPriceGapPercentage() { return priceGapPercentage; }
     public int getConsecutiveRejects() { return consecutiveRejects; }
     public boolean isDealReached() { return dealReached; }
-    public List<Double> getOfferHistory() { return new ArrayList<>(offerHistory); }
+    public int getOfferCount() { return offerCount; }
+    public double getOffer(int index) { return offers[index]; }
+    public List<Double> getOfferHistory() {
+        List<Double> history = new ArrayList<>(offerCount);
+        for (int i = 0; i < offerCount; i++) {
+            history.add(offers[i]);
+        }
+        return history;
+    }
     
     // Setters
     public void setConsecutiveRejects(int consecutiveRejects) { 
@@ -69,7 +122,30 @@ public class NegotiationState {
         this.dealReached = dealReached; 
     }
     public void addOffer(double price) {
-        offerHistory.add(price);
+        if (offerCount == offers.length) {
+            offers = Arrays.copyOf(offers, offers.length * 2);
+        }
+        offers[offerCount++] = price;
+    }
+    
+    /**
+     * Overwrite this state with a snapshot of other, reusing the history buffer
+     */
+    public void copyFrom(NegotiationState other) {
+        this.round = other.round;
+        this.lastOfferPrice = other.lastOfferPrice;
+        this.myReservationPrice = other.myReservationPrice;
+        this.myTargetPrice = other.myTargetPrice;
+        this.opponentLastOffer = other.opponentLastOffer;
+        this.priceGap = other.priceGap;
+        this.priceGapPercentage = other.priceGapPercentage;
+        this.consecutiveRejects = other.consecutiveRejects;
+        this.dealReached = other.dealReached;
+        if (offers.length < other.offerCount) {
+            offers = new double[other.offers.length];
+        }
+        System.arraycopy(other.offers, 0, offers, 0, other.offerCount);
+        this.offerCount = other.offerCount;
     }
 }
 
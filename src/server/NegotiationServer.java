@@ -0,0 +1,608 @@
+package server;
+
+import agents.BuyerAgent;
+import agents.PolicyPublisher;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.DialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import metrics.LatencyHistogram;
+import session.NegotiationSession;
+import session.SessionCheckpoint;
+import training.SelfPlayTrainer;
+import util.Log;
+
+/**
+ * Headless negotiation server speaking line-delimited JSON over TCP (localhost by default).
+ *
+ * Every request is one JSON object per line and gets one JSON object back; an optional "id"
+ * is echoed so a client can pipeline requests. Sessions are independent of connections, so
+ * one connection can drive many negotiations. Pipelined requests for the same session on one
+ * connection run one at a time in the order they were sent; requests for different sessions
+ * (and open/stats) may complete out of order.
+ *
+ *   {"op":"open","item":"bike","asking":200,"reservation":180,"target":120}
+ *       -> {"ok":true,"session":"s1","message":"...","offer":120.0}
+ *   {"op":"turn","session":"s1","message":"I can do $170"}
+ *       -> {"ok":true,"session":"s1","message":"...","offer":131.0,"sellerPrice":170.0,"outcome":"ONGOING",...}
+ *   {"op":"close","session":"s1"}
+ *   {"op":"stats"}
+ *
+ * All sessions share one loaded dialogue model (each gets its own conversation state through
+ * newSession()) and act on the policy in a PolicyPublisher, so serving does not learn. Requests
+ * run on a bounded worker pool; when its queue is full the request is answered with an error.
+ * Sessions idle longer than the timeout are evicted, or, with --spill-dir, checkpointed to disk
+ * (SessionCheckpoint) and transparently restored on their next request, so the number of open
+ * negotiations is not bounded by the heap.
+ *
+ * Usage: NegotiationServer [--port 7878] [--host 127.0.0.1] [--dataset path] [--generator markov|contextual]
+ *                          [--policy q_table.bin] [--workers N] [--queue N] [--max-sessions N]
+ *                          [--idle-timeout seconds] [--spill-dir path] [--render-deadline ms]
+ */
+public class NegotiationServer {
+
+    private static class ServerSession {
+        final String id;
+        final NegotiationSession negotiation;
+        volatile long lastActiveNanos;
+        // Set (under the session lock) once the session has been written to disk and dropped from memory.
+        boolean spilled;
+
+        ServerSession(String id, NegotiationSession negotiation) {
+            this.id = id;
+            this.negotiation = negotiation;
+            this.lastActiveNanos = System.nanoTime();
+        }
+    }
+
+    private static final Pattern SESSION_ID = Pattern.compile("s\\d+");
+
+    private final DialogueGenerator generator;
+    private final PolicyPublisher policy;
+    private final int maxSessions;
+    private final int queueCapacity;
+    private final long idleTimeoutNanos;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections;
+    private final ScheduledExecutorService housekeeping;
+    private final ConcurrentHashMap<String, ServerSession> sessions = new ConcurrentHashMap<>();
+
+    private ExecutorService renderPool;
+    private long renderDeadlineMillis;
+    private Path spillDir;
+
+    private volatile ServerSocket serverSocket;
+    private volatile long startNanos;
+
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final AtomicLong sessionsOpened = new AtomicLong();
+    private final AtomicLong sessionsClosed = new AtomicLong();
+    private final AtomicLong sessionsEvicted = new AtomicLong();
+    private final AtomicLong sessionsSpilled = new AtomicLong();
+    private final AtomicLong sessionsRestored = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    // Sessions held in memory, counted as soon as open reserves a slot so concurrent opens can't pass maxSessions.
+    private final AtomicInteger residentSessions = new AtomicInteger();
+    private final LatencyHistogram turnLatency = new LatencyHistogram();
+
+    public NegotiationServer(DialogueGenerator generator, PolicyPublisher policy, int workerThreads,
+                             int queueCapacity, int maxSessions, long idleTimeoutMillis) {
+        this.generator = generator;
+        this.policy = policy;
+        this.maxSessions = maxSessions;
+        this.queueCapacity = queueCapacity;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), daemonThreads("negotiation-worker"));
+        this.connections = Executors.newCachedThreadPool(daemonThreads("negotiation-connection"));
+        this.housekeeping = Executors.newSingleThreadScheduledExecutor(daemonThreads("negotiation-housekeeping"));
+    }
+
+    // Bounds each buyer reply's text generation (see BuyerAgent.setRenderDeadline).
+    public void setRenderDeadline(ExecutorService renderPool, long deadlineMillis) {
+        this.renderPool = renderPool;
+        this.renderDeadlineMillis = deadlineMillis;
+    }
+
+    // Park idle sessions in this directory instead of evicting them (null restores eviction).
+    public void setSpillDirectory(Path spillDir) throws IOException {
+        if (spillDir != null) {
+            Files.createDirectories(spillDir);
+        }
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Binds and starts accepting connections; returns the bound port (useful with port 0).
+     */
+    public int start(InetAddress host, int port) throws IOException {
+        serverSocket = new ServerSocket(port, 256, host);
+        startNanos = System.nanoTime();
+
+        long sweepMillis = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 4);
+        housekeeping.scheduleWithFixedDelay(this::evictIdleSessions, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+
+        Thread acceptor = new Thread(this::acceptLoop, "negotiation-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {
+        }
+        housekeeping.shutdownNow();
+        workers.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serveConnection(socket));
+            } catch (SocketException e) {
+                // Closed by stop().
+                return;
+            } catch (IOException e) {
+                Log.warn("NegotiationServer", "Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        openConnections.incrementAndGet();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            // Requests waiting behind an in-flight request for the same session, keyed by session id.
+            Map<String, ArrayDeque<Runnable>> inFlight = new HashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                long received = System.nanoTime();
+                requests.incrementAndGet();
+
+                JsonObject request;
+                try {
+                    JsonElement parsed = JsonParser.parseString(line);
+                    if (!parsed.isJsonObject()) {
+                        throw new IllegalArgumentException("request must be a JSON object");
+                    }
+                    request = parsed.getAsJsonObject();
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                    send(out, error(null, "malformed request: " + e.getMessage()));
+                    continue;
+                }
+
+                Runnable task = () -> send(out, handle(request, received));
+                // A malformed session field is left for handle() to report.
+                JsonElement sessionField = request.get("session");
+                String sessionId = sessionField != null && sessionField.isJsonPrimitive() ? sessionField.getAsString() : null;
+                if (sessionId != null) {
+                    synchronized (inFlight) {
+                        ArrayDeque<Runnable> backlog = inFlight.get(sessionId);
+                        if (backlog != null) {
+                            if (backlog.size() < queueCapacity) {
+                                backlog.add(task);
+                            } else {
+                                rejected.incrementAndGet();
+                                send(out, error(request, "server busy"));
+                            }
+                            continue;
+                        }
+                        inFlight.put(sessionId, new ArrayDeque<>());
+                    }
+                }
+
+                try {
+                    workers.execute(sessionId == null ? task : () -> runInOrder(inFlight, sessionId, task));
+                } catch (RejectedExecutionException e) {
+                    if (sessionId != null) {
+                        synchronized (inFlight) {
+                            inFlight.remove(sessionId);
+                        }
+                    }
+                    rejected.incrementAndGet();
+                    send(out, error(request, "server busy"));
+                }
+            }
+        } catch (IOException e) {
+            // Client went away; its sessions stay until closed or evicted.
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    // Runs task, then whatever queued behind it for the session, on this worker; handle() turns
+    // failures into error replies, so the loop always gets to drain the backlog.
+    private void runInOrder(Map<String, ArrayDeque<Runnable>> inFlight, String sessionId, Runnable task) {
+        Runnable next = task;
+        while (next != null) {
+            next.run();
+            synchronized (inFlight) {
+                next = inFlight.get(sessionId).poll();
+                if (next == null) {
+                    inFlight.remove(sessionId);
+                }
+            }
+        }
+    }
+
+    private void send(Writer out, JsonObject response) {
+        String json = response.toString();
+        synchronized (out) {
+            try {
+                out.write(json);
+                out.write('\n');
+                out.flush();
+            } catch (IOException ignored) {
+                // Connection closed while the request was in flight.
+            }
+        }
+    }
+
+    JsonObject handle(JsonObject request, long receivedNanos) {
+        String op = string(request, "op");
+        try {
+            switch (op == null ? "" : op) {
+                case "open":
+                    return open(request);
+                case "turn":
+                    JsonObject response = turn(request);
+                    turnLatency.record(System.nanoTime() - receivedNanos);
+                    return response;
+                case "close":
+                    return close(request);
+                case "stats":
+                    return reply(request, stats());
+                default:
+                    throw new IllegalArgumentException("unknown op: " + op);
+            }
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            return error(request, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private JsonObject open(JsonObject request) {
+        if (residentSessions.incrementAndGet() > maxSessions) {
+            residentSessions.decrementAndGet();
+            throw new IllegalStateException("too many open sessions");
+        }
+        ServerSession session;
+        String message;
+        boolean added = false;
+        try {
+            double asking = number(request, "asking");
+            double reservation = number(request, "reservation");
+            double target = number(request, "target");
+
+            BuyerAgent buyer = newBuyer(reservation, target);
+            String item = string(request, "item");
+            if (item != null) {
+                buyer.setItemContext(item);
+            }
+
+            NegotiationSession negotiation = new NegotiationSession(buyer, asking);
+            message = negotiation.open();
+            session = new ServerSession("s" + sessionIds.incrementAndGet(), negotiation);
+            sessions.put(session.id, session);
+            added = true;
+        } finally {
+            if (!added) {
+                residentSessions.decrementAndGet();
+            }
+        }
+        sessionsOpened.incrementAndGet();
+
+        JsonObject body = new JsonObject();
+        body.addProperty("session", session.id);
+        body.addProperty("message", message);
+        body.addProperty("offer", session.negotiation.getBuyer().getCurrentOffer());
+        return reply(request, body);
+    }
+
+    private BuyerAgent newBuyer(double reservation, double target) {
+        BuyerAgent buyer = new BuyerAgent(generator.newSession(), reservation, target);
+        if (policy != null) {
+            buyer.attachPolicy(policy);
+        }
+        if (renderPool != null) {
+            buyer.setRenderDeadline(renderPool, renderDeadlineMillis);
+        }
+        return buyer;
+    }
+
+    private JsonObject turn(JsonObject request) {
+        String message = string(request, "message");
+        if (message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("missing message");
+        }
+
+        ServerSession session;
+        NegotiationSession.TurnResult result;
+        while (true) {
+            session = lookup(request);
+            // Turns on one session are serialized; different sessions run in parallel.
+            synchronized (session) {
+                if (session.spilled) {
+                    // Parked while we waited for the lock; the next lookup loads it back.
+                    continue;
+                }
+                if (session.negotiation.isFinished()) {
+                    throw new IllegalStateException("negotiation already ended: " + session.negotiation.getOutcome());
+                }
+                result = session.negotiation.turn(message.trim());
+                session.lastActiveNanos = System.nanoTime();
+                break;
+            }
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("session", session.id);
+        if (result.buyerMessage != null) {
+            body.addProperty("message", result.buyerMessage);
+        }
+        body.addProperty("offer", result.buyerOffer);
+        body.addProperty("sellerPrice", result.sellerPrice);
+        body.addProperty("round", result.round);
+        if (result.priceNote != null) {
+            body.addProperty("note", result.priceNote);
+        }
+        body.addProperty("outcome", result.outcome.name());
+        if (result.outcomeDetail != null) {
+            body.addProperty("detail", result.outcomeDetail);
+        }
+        return reply(request, body);
+    }
+
+    private JsonObject close(JsonObject request) {
+        while (true) {
+            ServerSession session = lookup(request);
+            synchronized (session) {
+                if (session.spilled) {
+                    continue;
+                }
+                if (sessions.remove(session.id, session)) {
+                    residentSessions.decrementAndGet();
+                    sessionsClosed.incrementAndGet();
+                }
+                JsonObject body = new JsonObject();
+                body.addProperty("session", session.id);
+                body.addProperty("outcome", session.negotiation.getOutcome().name());
+                return reply(request, body);
+            }
+        }
+    }
+
+    private ServerSession lookup(JsonObject request) {
+        String id = string(request, "session");
+        ServerSession session = id != null ? sessions.get(id) : null;
+        if (session == null && id != null && spillDir != null) {
+            session = restore(id);
+        }
+        if (session == null) {
+            throw new IllegalArgumentException("unknown session: " + id);
+        }
+        return session;
+    }
+
+    private ServerSession restore(String id) {
+        if (!SESSION_ID.matcher(id).matches()) {
+            return null;
+        }
+        Path file = spillPath(id);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        // computeIfAbsent makes concurrent requests for the same parked session restore it once.
+        return sessions.computeIfAbsent(id, key -> {
+            try {
+                if (!Files.isRegularFile(file)) {
+                    return null;
+                }
+                NegotiationSession negotiation = SessionCheckpoint.load(file, newBuyer(0.0, 0.0));
+                Files.delete(file);
+                residentSessions.incrementAndGet();
+                sessionsRestored.incrementAndGet();
+                return new ServerSession(key, negotiation);
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not restore session " + key + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private Path spillPath(String id) {
+        return spillDir.resolve(id + ".ckpt");
+    }
+
+    private void evictIdleSessions() {
+        for (Map.Entry<String, ServerSession> entry : sessions.entrySet()) {
+            ServerSession session = entry.getValue();
+            if (System.nanoTime() - session.lastActiveNanos <= idleTimeoutNanos) {
+                continue;
+            }
+            if (spillDir == null) {
+                if (sessions.remove(entry.getKey(), session)) {
+                    residentSessions.decrementAndGet();
+                    sessionsEvicted.incrementAndGet();
+                }
+                continue;
+            }
+            synchronized (session) {
+                if (session.spilled || System.nanoTime() - session.lastActiveNanos <= idleTimeoutNanos) {
+                    continue;
+                }
+                try {
+                    // The file is complete before the session leaves the map, so a restore never sees a partial write.
+                    SessionCheckpoint.save(session.negotiation, spillPath(session.id));
+                    session.spilled = true;
+                    if (sessions.remove(entry.getKey(), session)) {
+                        residentSessions.decrementAndGet();
+                    }
+                    sessionsSpilled.incrementAndGet();
+                } catch (IOException e) {
+                    Log.warn("NegotiationServer", "Could not spill session " + session.id + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public JsonObject stats() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        JsonObject stats = new JsonObject();
+        stats.addProperty("uptimeSeconds", Math.round(seconds));
+        stats.addProperty("connections", openConnections.get());
+        stats.addProperty("sessionsActive", sessions.size());
+        stats.addProperty("sessionsOpened", sessionsOpened.get());
+        stats.addProperty("sessionsClosed", sessionsClosed.get());
+        stats.addProperty("sessionsEvicted", sessionsEvicted.get());
+        stats.addProperty("sessionsSpilled", sessionsSpilled.get());
+        stats.addProperty("sessionsRestored", sessionsRestored.get());
+        stats.addProperty("requests", requests.get());
+        stats.addProperty("rejected", rejected.get());
+        stats.addProperty("errors", errors.get());
+        stats.addProperty("turns", turnLatency.getCount());
+        stats.addProperty("turnsPerSecond", Math.round(turnLatency.getCount() / seconds * 10) / 10.0);
+        stats.addProperty("turnMeanMs", millis(Math.round(turnLatency.getMeanNanos())));
+        stats.addProperty("turnP50Ms", millis(turnLatency.getPercentileNanos(0.50)));
+        stats.addProperty("turnP99Ms", millis(turnLatency.getPercentileNanos(0.99)));
+        stats.addProperty("turnP999Ms", millis(turnLatency.getPercentileNanos(0.999)));
+        stats.addProperty("turnMaxMs", millis(turnLatency.getMaxNanos()));
+        if (policy != null && policy.current() != null) {
+            stats.addProperty("policyVersion", policy.current().getVersion());
+        }
+        return stats;
+    }
+
+    public PolicyPublisher getPolicy() {
+        return policy;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static JsonObject reply(JsonObject request, JsonObject body) {
+        JsonObject response = new JsonObject();
+        copyId(request, response);
+        response.addProperty("ok", true);
+        for (Map.Entry<String, JsonElement> entry : body.entrySet()) {
+            response.add(entry.getKey(), entry.getValue());
+        }
+        return response;
+    }
+
+    private static JsonObject error(JsonObject request, String message) {
+        JsonObject response = new JsonObject();
+        copyId(request, response);
+        response.addProperty("ok", false);
+        response.addProperty("error", message);
+        return response;
+    }
+
+    private static void copyId(JsonObject request, JsonObject response) {
+        if (request != null && request.has("id")) {
+            response.add("id", request.get("id"));
+        }
+    }
+
+    private static String string(JsonObject request, String key) {
+        JsonElement value = request.get(key);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static double number(JsonObject request, String key) {
+        JsonElement value = request.get(key);
+        if (value == null || value.isJsonNull()) {
+            throw new IllegalArgumentException("missing " + key);
+        }
+        try {
+            return value.getAsDouble();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        String policyPath = opts.getOrDefault("policy", "q_table.bin");
+        int port = Integer.parseInt(opts.getOrDefault("port", "7878"));
+        int workerThreads = Integer.parseInt(opts.getOrDefault("workers",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int queue = Integer.parseInt(opts.getOrDefault("queue", "10000"));
+        int maxSessions = Integer.parseInt(opts.getOrDefault("max-sessions", "100000"));
+        long idleSeconds = Long.parseLong(opts.getOrDefault("idle-timeout", "300"));
+
+        DialogueGenerator generator = "contextual".equals(opts.get("generator"))
+            ? new ContextualDialogueGenerator(datasetPath)
+            : new MarkovDialogueGenerator(datasetPath, 3);
+
+        // Warm-start constructor loads the saved policy if the file exists.
+        BuyerAgent policySource = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0, policyPath);
+        PolicyPublisher policy = new PolicyPublisher();
+        policy.publishFrom(policySource);
+        System.out.println("Policy: " + policySource.getQTableSize() + " states from " + policyPath);
+
+        NegotiationServer server = new NegotiationServer(generator, policy, workerThreads, queue,
+                                                         maxSessions, idleSeconds * 1000);
+        if (opts.containsKey("spill-dir")) {
+            server.setSpillDirectory(Paths.get(opts.get("spill-dir")));
+        }
+        if (opts.containsKey("render-deadline")) {
+            server.setRenderDeadline(Executors.newCachedThreadPool(daemonThreads("negotiation-render")),
+                                     Long.parseLong(opts.get("render-deadline")));
+        }
+
+        InetAddress host = InetAddress.getByName(opts.getOrDefault("host", "127.0.0.1"));
+        int bound = server.start(host, port);
+        System.out.println("Negotiation server listening on " + host.getHostAddress() + ":" + bound +
+                           " (" + workerThreads + " workers)");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Final stats: " + server.stats());
+            server.stop();
+        }));
+        Thread.currentThread().join();
+    }
+}
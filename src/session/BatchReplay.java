@@ -0,0 +1,223 @@
+package session;
+
+import agents.BuyerAgent;
+import agents.PolicyPublisher;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dialogue.ContextualDialogueGenerator;
+import dialogue.DialogueGenerator;
+import dialogue.MarkovDialogueGenerator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import metrics.LatencyHistogram;
+import training.SelfPlayTrainer;
+
+/**
+ * Replays recorded seller transcripts through the buyer, in parallel, without a console.
+ *
+ * Input is JSONL, one negotiation per line:
+ *   {"id":"n1","item":"bike","asking":200,"reservation":180,"target":120,"messages":["I can do $190", ...]}
+ * Each line is played through a NegotiationSession (the same price inference and ending rules
+ * as the interactive console) until the messages run out or the negotiation ends. One result
+ * line per negotiation is written as soon as it finishes, so output order follows completion,
+ * not input; "line" and "id" identify the input.
+ *
+ * Every worker thread reuses one BuyerAgent acting on the loaded policy (no learning), reseeded
+ * per input line, so offers are reproducible for a given --seed.
+ *
+ * Usage: BatchReplay --input seller_turns.jsonl --output results.jsonl [--dataset path]
+ *                    [--generator markov|contextual] [--policy q_table.bin] [--threads N] [--seed S]
+ */
+public class BatchReplay {
+
+    private final DialogueGenerator generator;
+    private final PolicyPublisher policy;
+    private final int threads;
+    private final long seed;
+
+    private final LatencyHistogram turnLatency = new LatencyHistogram();
+    private final AtomicLong negotiations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLongArray outcomes = new AtomicLongArray(NegotiationSession.Outcome.values().length);
+
+    private final ThreadLocal<BuyerAgent> buyers;
+
+    public BatchReplay(DialogueGenerator generator, PolicyPublisher policy, int threads, long seed) {
+        this.generator = generator;
+        this.policy = policy;
+        this.threads = Math.max(1, threads);
+        this.seed = seed;
+        this.buyers = ThreadLocal.withInitial(() -> {
+            BuyerAgent buyer = new BuyerAgent(this.generator.newSession(), 0.0, 0.0);
+            if (this.policy != null) {
+                buyer.attachPolicy(this.policy);
+            }
+            return buyer;
+        });
+    }
+
+    public void run(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        // Bounded queue plus caller-runs keeps the reader from racing ahead of the workers.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            String line;
+            long lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                final long number = ++lineNumber;
+                final String text = line;
+                if (text.trim().isEmpty()) {
+                    continue;
+                }
+                pool.execute(() -> {
+                    String result = replayLine(number, text).toString();
+                    synchronized (out) {
+                        try {
+                            out.write(result);
+                            out.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        out.flush();
+    }
+
+    JsonObject replayLine(long lineNumber, String line) {
+        JsonObject result = new JsonObject();
+        result.addProperty("line", lineNumber);
+        try {
+            JsonObject input = JsonParser.parseString(line).getAsJsonObject();
+            if (input.has("id")) {
+                result.add("id", input.get("id"));
+            }
+            replay(input, lineNumber, result);
+            negotiations.incrementAndGet();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            result.addProperty("error", e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        return result;
+    }
+
+    private void replay(JsonObject input, long lineNumber, JsonObject result) {
+        double asking = number(input, "asking");
+        double reservation = number(input, "reservation");
+        double target = number(input, "target");
+        JsonArray messages = input.has("messages") ? input.getAsJsonArray("messages") : new JsonArray();
+
+        BuyerAgent buyer = buyers.get();
+        buyer.reset(reservation, target);
+        buyer.setSeed(seed + 0x9E3779B97F4A7C15L * lineNumber);
+        buyer.setItemContext(input.has("item") ? input.get("item").getAsString() : null);
+
+        NegotiationSession session = new NegotiationSession(buyer, asking);
+        long start = System.nanoTime();
+        result.addProperty("opening", session.open());
+
+        JsonArray turns = new JsonArray();
+        for (JsonElement element : messages) {
+            if (session.isFinished()) {
+                break;
+            }
+            String message = element.getAsString().trim();
+            if (message.isEmpty()) {
+                continue;
+            }
+            long turnStart = System.nanoTime();
+            NegotiationSession.TurnResult turn = session.turn(message);
+            long turnNanos = System.nanoTime() - turnStart;
+            turnLatency.record(turnNanos);
+
+            JsonObject entry = new JsonObject();
+            entry.addProperty("sellerPrice", turn.sellerPrice);
+            entry.addProperty("offer", turn.buyerOffer);
+            if (turn.buyerMessage != null) {
+                entry.addProperty("reply", turn.buyerMessage);
+            }
+            entry.addProperty("latencyMicros", turnNanos / 1000);
+            turns.add(entry);
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        NegotiationSession.Outcome outcome = session.getOutcome();
+        outcomes.incrementAndGet(outcome.ordinal());
+        result.addProperty("outcome", outcome.name());
+        result.addProperty("rounds", buyer.getState().getRound());
+        result.addProperty("finalSellerPrice", session.getCurrentSellerPrice());
+        result.addProperty("finalOffer", buyer.getCurrentOffer());
+        JsonArray offers = new JsonArray();
+        for (int i = 0; i < buyer.getState().getOfferCount(); i++) {
+            offers.add(buyer.getState().getOffer(i));
+        }
+        result.add("offers", offers);
+        result.add("turns", turns);
+        result.addProperty("totalMicros", totalNanos / 1000);
+    }
+
+    private static double number(JsonObject input, String key) {
+        if (!input.has(key) || input.get(key).isJsonNull()) {
+            throw new IllegalArgumentException("missing " + key);
+        }
+        return input.get(key).getAsDouble();
+    }
+
+    public void printSummary(double seconds) {
+        long done = negotiations.get();
+        System.out.println("Negotiations: " + done + " (" + failures.get() + " failed) in " +
+            String.format("%.2f", seconds) + "s (" + String.format("%.0f", done / seconds) + " negotiations/sec, " +
+            String.format("%.0f", turnLatency.getCount() / seconds) + " turns/sec)");
+        StringBuilder counts = new StringBuilder("Outcomes:");
+        for (NegotiationSession.Outcome outcome : NegotiationSession.Outcome.values()) {
+            counts.append(' ').append(outcome.name()).append('=').append(outcomes.get(outcome.ordinal()));
+        }
+        System.out.println(counts);
+        System.out.println(String.format("Turn latency: mean %.1fus  p50 %.1fus  p99 %.1fus  max %.1fus",
+            turnLatency.getMeanNanos() / 1000.0, turnLatency.getPercentileNanos(0.50) / 1000.0,
+            turnLatency.getPercentileNanos(0.99) / 1000.0, turnLatency.getMaxNanos() / 1000.0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        if (!opts.containsKey("input") || !opts.containsKey("output")) {
+            System.out.println("Usage: BatchReplay --input seller_turns.jsonl --output results.jsonl [--dataset path] " +
+                               "[--generator markov|contextual] [--policy q_table.bin] [--threads N] [--seed S]");
+            return;
+        }
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        String policyPath = opts.getOrDefault("policy", "q_table.bin");
+        int threads = Integer.parseInt(opts.getOrDefault("threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+
+        DialogueGenerator generator = "contextual".equals(opts.get("generator"))
+            ? new ContextualDialogueGenerator(datasetPath)
+            : new MarkovDialogueGenerator(datasetPath, 3);
+
+        BuyerAgent policySource = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0, policyPath);
+        PolicyPublisher policy = new PolicyPublisher();
+        policy.publishFrom(policySource);
+
+        BatchReplay replay = new BatchReplay(generator, policy, threads, seed);
+        long start = System.nanoTime();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(opts.get("input")), StandardCharsets.UTF_8), 1 << 16);
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                 new FileOutputStream(opts.get("output")), StandardCharsets.UTF_8), 1 << 16)) {
+            replay.run(in, out);
+        }
+        replay.printSummary((System.nanoTime() - start) / 1e9);
+        System.out.println("Results written to " + opts.get("output"));
+    }
+}
@@ -0,0 +1,190 @@
+package session;
+
+import agents.BuyerAgent;
+import java.util.List;
+import metrics.Metrics;
+import metrics.Stage;
+import util.PriceFormat;
+
+/**
+ * One buyer-vs-seller negotiation driven one seller message at a time.
+ *
+ * Holds the turn loop that used to live in InteractiveNegotiation: the seller's price is
+ * inferred from their message (or kept from the previous turn), the buyer responds, and the
+ * end-of-negotiation rules are checked. The console and the server both drive it and only
+ * differ in how they show the TurnResult.
+ */
+public class NegotiationSession {
+
+    public static final int MAX_ROUNDS = 20;
+    public static final int MAX_BUYER_ROUNDS = 15;
+
+    public enum Outcome { ONGOING, DEAL, WALKED_AWAY, SELLER_QUIT, ROUND_LIMIT }
+
+    public static class TurnResult {
+        public final double sellerPrice;
+        // How the seller's message was read, e.g. "Inferred price: $120.00"; null when the seller quit.
+        public final String priceNote;
+        // Null when the negotiation ended before the buyer answered.
+        public final String buyerMessage;
+        public final double buyerOffer;
+        public final int round;
+        public final double priceGap;
+        public final Outcome outcome;
+        // Human-readable ending, e.g. "Agreed price: $120.00"; null while ongoing.
+        public final String outcomeDetail;
+
+        TurnResult(double sellerPrice, String priceNote, String buyerMessage, double buyerOffer,
+                   int round, double priceGap, Outcome outcome, String outcomeDetail) {
+            this.sellerPrice = sellerPrice;
+            this.priceNote = priceNote;
+            this.buyerMessage = buyerMessage;
+            this.buyerOffer = buyerOffer;
+            this.round = round;
+            this.priceGap = priceGap;
+            this.outcome = outcome;
+            this.outcomeDetail = outcomeDetail;
+        }
+
+        public boolean isFinished() {
+            return outcome != Outcome.ONGOING;
+        }
+    }
+
+    private final BuyerAgent buyer;
+    private double currentSellerPrice;
+    private int round;
+    private Outcome outcome = Outcome.ONGOING;
+
+    public NegotiationSession(BuyerAgent buyer, double askingPrice) {
+        this.buyer = buyer;
+        this.currentSellerPrice = askingPrice;
+    }
+
+    // Resumes a checkpointed session (see SessionCheckpoint).
+    NegotiationSession(BuyerAgent buyer, double currentSellerPrice, int round, Outcome outcome) {
+        this.buyer = buyer;
+        this.currentSellerPrice = currentSellerPrice;
+        this.round = round;
+        this.outcome = outcome;
+    }
+
+    /**
+     * The buyer's opening message.
+     */
+    public String open() {
+        round = 1;
+        return buyer.makeInitialOffer();
+    }
+
+    public TurnResult turn(String sellerMessage) {
+        if (outcome != Outcome.ONGOING) {
+            throw new IllegalStateException("Negotiation already ended: " + outcome);
+        }
+        String lower = sellerMessage.toLowerCase();
+        if (lower.equals("quit") || lower.equals("exit")) {
+            return finish(null, null, Outcome.SELLER_QUIT, "Negotiation ended by seller.");
+        }
+
+        long start = Metrics.start();
+        SellerMessageClassifier.Result reading = SellerMessageClassifier.DEFAULT.classify(sellerMessage);
+        Metrics.record(Stage.PRICE_INFERENCE, start);
+        double inferredPrice = reading.price;
+        boolean isRejecting = reading.rejecting;
+        boolean wantsHigher = reading.wantsHigher;
+        boolean isAccepting = reading.accepting;
+
+        String note;
+        if (inferredPrice > 0) {
+            currentSellerPrice = inferredPrice;
+            note = "Inferred price: " + PriceFormat.dollars(currentSellerPrice);
+        } else if (isAccepting && buyer.getCurrentOffer() > 0) {
+            // Seller typed "deal/ok/accepted" without a price: treat as accepting the buyer's current offer.
+            currentSellerPrice = buyer.getCurrentOffer();
+            note = "Seller accepts buyer offer: " + PriceFormat.dollars(currentSellerPrice);
+            return finish(note, null, Outcome.DEAL, "Agreed price: " + PriceFormat.dollars(currentSellerPrice));
+        } else if (wantsHigher && !isRejecting) {
+            note = "Seller wants a higher price: keeping price " + PriceFormat.dollars(currentSellerPrice);
+        } else {
+            note = "Keeping price: " + PriceFormat.dollars(currentSellerPrice);
+        }
+
+        String buyerResponse = buyer.respondToSeller(sellerMessage, currentSellerPrice);
+
+        if (buyer.hasWalkedAway()) {
+            return finish(note, buyerResponse, Outcome.WALKED_AWAY, "Buyer walked away.");
+        }
+        if (buyer.getState().isDealReached()) {
+            return finish(note, buyerResponse, Outcome.DEAL, "Agreed price: " + PriceFormat.dollars(currentSellerPrice));
+        }
+        if (buyer.getState().getOpponentLastOffer() <= buyer.getReservationPrice() &&
+            buyer.getState().getOpponentLastOffer() > 0) {
+            return finish(note, buyerResponse, Outcome.DEAL, "Buyer accepts your price: " + PriceFormat.dollars(currentSellerPrice));
+        }
+        String lowerResponse = buyerResponse.toLowerCase();
+        if (lowerResponse.contains("deal") && (lowerResponse.contains("accept") || lowerResponse.contains("agreed"))) {
+            return finish(note, buyerResponse, Outcome.DEAL, "Buyer accepts: " + PriceFormat.dollars(currentSellerPrice));
+        }
+        if (buyer.getState().getRound() > MAX_BUYER_ROUNDS) {
+            return finish(note, buyerResponse, Outcome.ROUND_LIMIT,
+                "Negotiation ended after " + buyer.getState().getRound() + " rounds.");
+        }
+
+        round++;
+        if (round >= MAX_ROUNDS) {
+            return finish(note, buyerResponse, Outcome.ROUND_LIMIT, null);
+        }
+        return result(note, buyerResponse, Outcome.ONGOING, null);
+    }
+
+    private TurnResult finish(String note, String buyerMessage, Outcome ending, String detail) {
+        outcome = ending;
+        return result(note, buyerMessage, ending, detail);
+    }
+
+    private TurnResult result(String note, String buyerMessage, Outcome turnOutcome, String detail) {
+        double offer = buyer.getCurrentOffer();
+        return new TurnResult(currentSellerPrice, note, buyerMessage, offer, buyer.getState().getRound(),
+                              Math.abs(offer - currentSellerPrice), turnOutcome, detail);
+    }
+
+    public BuyerAgent getBuyer() {
+        return buyer;
+    }
+
+    public double getCurrentSellerPrice() {
+        return currentSellerPrice;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isFinished() {
+        return outcome != Outcome.ONGOING;
+    }
+
+    public List<Double> getOfferHistory() {
+        return buyer.getOfferHistory();
+    }
+
+    public static double inferPrice(String message) {
+        return SellerMessageClassifier.DEFAULT.classify(message).price;
+    }
+
+    public static boolean isRejecting(String message) {
+        return SellerMessageClassifier.DEFAULT.classify(message).rejecting;
+    }
+
+    public static boolean wantsHigherPrice(String message) {
+        return SellerMessageClassifier.DEFAULT.classify(message).wantsHigher;
+    }
+
+    public static boolean isAccepting(String message) {
+        return SellerMessageClassifier.DEFAULT.classify(message).accepting;
+    }
+}
@@ -0,0 +1,222 @@
+package session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a seller message in one pass: whether it rejects, asks for more, or accepts, and the
+ * first price it mentions.
+ *
+ * The keyword sets are compiled once into an Aho-Corasick automaton (a full DFA over ASCII),
+ * so each character costs one table lookup however many keywords there are. Price extraction
+ * runs in the same loop and reproduces the leftmost match of
+ * {@code \$\s*(\d+(?:\.\d{1,2})?)|(\d+(?:\.\d{1,2})?)\s*(?:dollars?|bucks?|usd)} on the
+ * lowercased message. Matching is case-insensitive.
+ */
+public class SellerMessageClassifier {
+
+    public static final String[] REJECT_KEYWORDS = {
+        "no", "nope", "can't", "cannot", "won't", "wouldn't",
+        "too low", "too high", "impossible", "refuse",
+        "not accepting", "not interested", "pass"
+    };
+    public static final String[] HIGHER_KEYWORDS = {
+        "too little", "too small", "too low", "need more",
+        "want more", "need higher", "want higher", "more money",
+        "increase", "raise", "go up", "bump up"
+    };
+    public static final String[] ACCEPT_KEYWORDS = {
+        "deal", "accepted", "accept", "agreed", "sounds good", "works", "ok", "okay", "sure"
+    };
+
+    public static final SellerMessageClassifier DEFAULT =
+        new SellerMessageClassifier(REJECT_KEYWORDS, HIGHER_KEYWORDS, ACCEPT_KEYWORDS);
+
+    private static final int REJECT = 1;
+    private static final int HIGHER = 2;
+    private static final int ACCEPT = 4;
+    private static final int ALPHABET = 128;
+    private static final String[] PRICE_SUFFIXES = {"dollars", "dollar", "bucks", "buck", "usd"};
+
+    public static class Result {
+        // 0 when the message names no price.
+        public final double price;
+        public final boolean rejecting;
+        public final boolean wantsHigher;
+        public final boolean accepting;
+
+        Result(double price, int flags) {
+            this.price = price;
+            this.rejecting = (flags & REJECT) != 0;
+            this.wantsHigher = (flags & HIGHER) != 0;
+            this.accepting = (flags & ACCEPT) != 0;
+        }
+    }
+
+    // transitions[state * ALPHABET + c]; output[state] is the OR of every keyword set ending there.
+    private final int[] transitions;
+    private final int[] output;
+
+    public SellerMessageClassifier(String[] rejectKeywords, String[] higherKeywords, String[] acceptKeywords) {
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(newNode());
+        outputs.add(0);
+        addAll(trie, outputs, rejectKeywords, REJECT);
+        addAll(trie, outputs, higherKeywords, HIGHER);
+        addAll(trie, outputs, acceptKeywords, ACCEPT);
+
+        int states = trie.size();
+        transitions = new int[states * ALPHABET];
+        output = new int[states];
+        for (int s = 0; s < states; s++) {
+            output[s] = outputs.get(s);
+        }
+
+        // Breadth-first failure links, folded straight into a complete transition table.
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie.get(0)[c];
+            if (next > 0) {
+                transitions[c] = next;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] |= output[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie.get(state)[c];
+                if (next > 0) {
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    transitions[state * ALPHABET + c] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+    }
+
+    // Children default to 0, which means "none": the root is never anyone's child.
+    private static int[] newNode() {
+        return new int[ALPHABET];
+    }
+
+    private static void addAll(List<int[]> trie, List<Integer> outputs, String[] keywords, int flag) {
+        for (String keyword : keywords) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("Keywords must be ASCII: " + keyword);
+                }
+                int next = trie.get(state)[c];
+                if (next == 0) {
+                    next = trie.size();
+                    trie.get(state)[c] = next;
+                    trie.add(newNode());
+                    outputs.add(0);
+                }
+                state = next;
+            }
+            outputs.set(state, outputs.get(state) | flag);
+        }
+    }
+
+    public Result classify(String message) {
+        int state = 0;
+        int flags = 0;
+        double price = 0.0;
+        boolean priceFound = false;
+        int length = message.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(message.charAt(i));
+            state = c < ALPHABET ? transitions[state * ALPHABET + c] : 0;
+            flags |= output[state];
+
+            if (!priceFound) {
+                // Only a '$' or the first digit of a run can start a match: starting later in the
+                // same run reaches the same end and the same suffix, so it fails the same way.
+                if (c == '$' || (isDigit(c) && (i == 0 || !isDigit(message.charAt(i - 1))))) {
+                    double parsed = priceAt(message, i);
+                    if (parsed >= 0) {
+                        price = parsed;
+                        priceFound = true;
+                    }
+                }
+            }
+        }
+        return new Result(price, flags);
+    }
+
+    /**
+     * The price the pattern matches starting exactly at index start, or -1 if it doesn't match there.
+     */
+    private static double priceAt(String message, int start) {
+        if (message.charAt(start) == '$') {
+            int i = skipSpace(message, start + 1);
+            int end = numberEnd(message, i);
+            return end > i ? Double.parseDouble(message.substring(i, end)) : -1;
+        }
+        int end = numberEnd(message, start);
+        int i = skipSpace(message, end);
+        for (String suffix : PRICE_SUFFIXES) {
+            if (startsWithLowercased(message, i, suffix)) {
+                return Double.parseDouble(message.substring(start, end));
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWithLowercased(String message, int offset, String lowerPrefix) {
+        if (offset + lowerPrefix.length() > message.length()) {
+            return false;
+        }
+        for (int k = 0; k < lowerPrefix.length(); k++) {
+            if (Character.toLowerCase(message.charAt(offset + k)) != lowerPrefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // End of \d+(?:\.\d{1,2})? starting at i; returns i when there are no digits.
+    private static int numberEnd(String message, int i) {
+        int length = message.length();
+        int end = i;
+        while (end < length && isDigit(message.charAt(end))) {
+            end++;
+        }
+        if (end == i) {
+            return i;
+        }
+        if (end + 1 < length && message.charAt(end) == '.' && isDigit(message.charAt(end + 1))) {
+            end += 2;
+            if (end < length && isDigit(message.charAt(end))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    // Skips regex \s: space, tab, newline, vertical tab, form feed, carriage return.
+    private static int skipSpace(String message, int i) {
+        int length = message.length();
+        while (i < length) {
+            char c = message.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,76 @@
+package session;
+
+import agents.BuyerAgent;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Compact binary snapshot of a NegotiationSession, so a session can be parked on disk (or
+ * shipped elsewhere) and resumed where it left off.
+ *
+ * Layout (big-endian): magic "HGSC", int version, double seller price, int round, byte outcome,
+ * then the buyer's checkpoint (see BuyerAgent.writeCheckpoint). A typical mid-negotiation session
+ * is a few hundred bytes. The policy is not part of the checkpoint: restore into a BuyerAgent
+ * that is set up (generator, policy, deadlines) the way a newly opened one would be.
+ */
+public class SessionCheckpoint {
+
+    private static final int MAGIC = 0x48475343; // "HGSC"
+    private static final int VERSION = 1;
+
+    public static void write(NegotiationSession session, DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeDouble(session.getCurrentSellerPrice());
+        out.writeInt(session.getRound());
+        out.writeByte(session.getOutcome().ordinal());
+        session.getBuyer().writeCheckpoint(out);
+    }
+
+    public static NegotiationSession read(DataInput in, BuyerAgent buyer) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a session checkpoint (bad magic)");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported session checkpoint version: " + version);
+        }
+        double sellerPrice = in.readDouble();
+        int round = in.readInt();
+        int outcome = in.readByte();
+        NegotiationSession.Outcome[] outcomes = NegotiationSession.Outcome.values();
+        if (outcome < 0 || outcome >= outcomes.length) {
+            throw new IOException("Corrupt session checkpoint (outcome " + outcome + ")");
+        }
+        buyer.readCheckpoint(in);
+        return new NegotiationSession(buyer, sellerPrice, round, outcomes[outcome]);
+    }
+
+    public static byte[] toBytes(NegotiationSession session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(session, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static NegotiationSession fromBytes(byte[] bytes, BuyerAgent buyer) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)), buyer);
+    }
+
+    // Written to a temp file and renamed, so a crash never leaves a half-written checkpoint behind.
+    public static void save(NegotiationSession session, Path file) throws IOException {
+        byte[] bytes = toBytes(session);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static NegotiationSession load(Path file, BuyerAgent buyer) throws IOException {
+        return fromBytes(Files.readAllBytes(file), buyer);
+    }
+}
@@ -0,0 +1,50 @@
+package training;
+
+import java.util.Random;
+
+/**
+ * Opens well above the listing price and only concedes a small share of the gap
+ * to the buyer each round, so the buyer has to work to move the anchor.
+ */
+public class AnchoringSeller implements SellerStrategy {
+
+    private final double anchorMarkup;
+    private final double concessionRate;
+    private double floorPrice;
+    private double askingPrice;
+
+    public AnchoringSeller() {
+        this(1.15, 0.1);
+    }
+
+    public AnchoringSeller(double anchorMarkup, double concessionRate) {
+        this.anchorMarkup = anchorMarkup;
+        this.concessionRate = concessionRate;
+    }
+
+    @Override
+    public void reset(double listPrice, double floorPrice, Random random) {
+        this.floorPrice = floorPrice;
+        this.askingPrice = listPrice * (anchorMarkup + random.nextDouble() * 0.1);
+    }
+
+    @Override
+    public double nextPrice(int round, double buyerOffer) {
+        if (round > 1) {
+            double gap = askingPrice - Math.max(buyerOffer, floorPrice);
+            askingPrice = Math.max(floorPrice, askingPrice - gap * concessionRate);
+        }
+        return Math.round(askingPrice * 100.0) / 100.0;
+    }
+
+    @Override
+    public boolean accepts(double buyerOffer) {
+        // Anchored sellers hold out for a little more than their floor.
+        return buyerOffer >= floorPrice * 1.05;
+    }
+
+    @Override
+    public String name() {
+        return "anchoring";
+    }
+}
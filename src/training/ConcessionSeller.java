@@ -0,0 +1,50 @@
+package training;
+
+import java.util.Random;
+
+/**
+ * Walks from the listing price down to the floor on a fixed schedule:
+ * price(r) = list - (list - floor) * min(1, (r - 1) / rounds)^shape.
+ * shape &lt; 1 concedes early, shape &gt; 1 holds firm and concedes late.
+ */
+public class ConcessionSeller implements SellerStrategy {
+
+    private final int roundsToFloor;
+    private final double shape;
+    private double listPrice;
+    private double floorPrice;
+    private double askingPrice;
+
+    public ConcessionSeller() {
+        this(10, 1.0);
+    }
+
+    public ConcessionSeller(int roundsToFloor, double shape) {
+        this.roundsToFloor = Math.max(1, roundsToFloor);
+        this.shape = shape;
+    }
+
+    @Override
+    public void reset(double listPrice, double floorPrice, Random random) {
+        this.listPrice = listPrice;
+        this.floorPrice = floorPrice;
+        this.askingPrice = listPrice;
+    }
+
+    @Override
+    public double nextPrice(int round, double buyerOffer) {
+        double progress = Math.min(1.0, (round - 1) / (double) roundsToFloor);
+        askingPrice = listPrice - (listPrice - floorPrice) * Math.pow(progress, shape);
+        return Math.round(askingPrice * 100.0) / 100.0;
+    }
+
+    @Override
+    public boolean accepts(double buyerOffer) {
+        return buyerOffer >= floorPrice && buyerOffer >= askingPrice * 0.97;
+    }
+
+    @Override
+    public String name() {
+        return "concession";
+    }
+}
@@ -0,0 +1,56 @@
+package training;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays real seller price trajectories from the CraigslistBargain data.
+ * Each episode samples one trajectory and rescales it so that its first price
+ * equals the episode's listing price.
+ */
+public class DatasetSeller implements SellerStrategy {
+
+    private final List<double[]> trajectories;
+    private double[] trajectory;
+    private double scale;
+    private double floorPrice;
+    private double askingPrice;
+
+    public DatasetSeller(List<double[]> trajectories) {
+        if (trajectories == null || trajectories.isEmpty()) {
+            throw new IllegalArgumentException("No seller trajectories to sample from");
+        }
+        this.trajectories = trajectories;
+    }
+
+    @Override
+    public void reset(double listPrice, double floorPrice, Random random) {
+        this.trajectory = trajectories.get(random.nextInt(trajectories.size()));
+        this.scale = trajectory[0] > 0 ? listPrice / trajectory[0] : 1.0;
+
+        // The lowest price the real seller ever named is their effective floor.
+        double lowest = trajectory[0];
+        for (double p : trajectory) {
+            lowest = Math.min(lowest, p);
+        }
+        this.floorPrice = Math.max(floorPrice, lowest * scale);
+        this.askingPrice = listPrice;
+    }
+
+    @Override
+    public double nextPrice(int round, double buyerOffer) {
+        int idx = Math.min(round - 1, trajectory.length - 1);
+        askingPrice = Math.max(floorPrice, trajectory[idx] * scale);
+        return Math.round(askingPrice * 100.0) / 100.0;
+    }
+
+    @Override
+    public boolean accepts(double buyerOffer) {
+        return buyerOffer >= floorPrice && buyerOffer >= askingPrice * 0.97;
+    }
+
+    @Override
+    public String name() {
+        return "dataset";
+    }
+}
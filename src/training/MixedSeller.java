@@ -0,0 +1,42 @@
+package training;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks one of several seller strategies at random at the start of each episode.
+ */
+public class MixedSeller implements SellerStrategy {
+
+    private final List<SellerStrategy> strategies;
+    private SellerStrategy current;
+
+    public MixedSeller(List<SellerStrategy> strategies) {
+        if (strategies == null || strategies.isEmpty()) {
+            throw new IllegalArgumentException("MixedSeller needs at least one strategy");
+        }
+        this.strategies = strategies;
+        this.current = strategies.get(0);
+    }
+
+    @Override
+    public void reset(double listPrice, double floorPrice, Random random) {
+        current = strategies.get(random.nextInt(strategies.size()));
+        current.reset(listPrice, floorPrice, random);
+    }
+
+    @Override
+    public double nextPrice(int round, double buyerOffer) {
+        return current.nextPrice(round, buyerOffer);
+    }
+
+    @Override
+    public boolean accepts(double buyerOffer) {
+        return current.accepts(buyerOffer);
+    }
+
+    @Override
+    public String name() {
+        return "mixed";
+    }
+}
@@ -0,0 +1,252 @@
+package training;
+
+import agents.BuyerAgent;
+import agents.QTable;
+import agents.QTableStore;
+import data.DatasetParser;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Batch Q-learning from recorded CraigslistBargain dialogues.
+ *
+ * Every buyer reply to a seller turn becomes one (state, action, reward, next-state)
+ * transition, bucketed exactly like BuyerAgent does online. The buyer's reservation
+ * price is not in the data, so the listing price stands in for it. The transitions
+ * are then swept several times on parallel workers that update one shared QTable.
+ *
+ * Usage: OfflineTrainer [--dataset path] [--epochs E] [--workers W] [--alpha A]
+ *                       [--gamma G] [--seed S] [--load q_table.bin] [--save q_table.bin]
+ */
+public class OfflineTrainer {
+
+    private static final String[] ACCEPT_WORDS = {"deal", "accept", "agreed", "agree", "sounds good"};
+
+    /** Transitions in flat primitive arrays so a full corpus costs a few MB. */
+    public static class Transitions {
+        public long[] states = new long[1024];
+        public int[] actions = new int[1024];
+        public double[] rewards = new double[1024];
+        public long[] nextStates = new long[1024];
+        public boolean[] terminal = new boolean[1024];
+        public int size;
+
+        public void add(long state, int action, double reward, long nextState, boolean isTerminal) {
+            if (size == states.length) {
+                int capacity = size * 2;
+                states = Arrays.copyOf(states, capacity);
+                actions = Arrays.copyOf(actions, capacity);
+                rewards = Arrays.copyOf(rewards, capacity);
+                nextStates = Arrays.copyOf(nextStates, capacity);
+                terminal = Arrays.copyOf(terminal, capacity);
+            }
+            states[size] = state;
+            actions[size] = action;
+            rewards[size] = reward;
+            nextStates[size] = nextState;
+            terminal[size] = isTerminal;
+            size++;
+        }
+    }
+
+    public static Transitions extractTransitions(List<DatasetParser.Transcript> transcripts) {
+        Transitions out = new Transitions();
+        for (DatasetParser.Transcript transcript : transcripts) {
+            extract(transcript, out);
+        }
+        return out;
+    }
+
+    private static void extract(DatasetParser.Transcript transcript, Transitions out) {
+        double reservation = transcript.listPrice;
+        double buyerOffer = transcript.buyerTarget;
+        double sellerPrice = 0.0;
+        int round = 1;
+        int rejects = 0;
+        boolean awaitingBuyer = false;
+
+        for (DatasetParser.Turn turn : transcript.turns) {
+            if ("seller".equals(turn.role)) {
+                if ("accept".equals(turn.action) || "quit".equals(turn.action) || "reject".equals(turn.action)) {
+                    break;
+                }
+                if (turn.price > 0) {
+                    sellerPrice = turn.price;
+                    if (reservation <= 0) {
+                        reservation = turn.price;
+                    }
+                }
+                awaitingBuyer = sellerPrice > 0;
+                continue;
+            }
+
+            if ("quit".equals(turn.action)) {
+                break;
+            }
+            if (!awaitingBuyer) {
+                // Opening offer, or a follow-up to the buyer's own previous message.
+                if (turn.price > 0) {
+                    buyerOffer = turn.price;
+                }
+                continue;
+            }
+            if (buyerOffer <= 0) {
+                buyerOffer = turn.price > 0 ? turn.price : sellerPrice * 0.7;
+            }
+
+            String intent = classifyBuyerTurn(turn, buyerOffer, sellerPrice);
+            long state = BuyerAgent.bucketState(round, sellerPrice, buyerOffer, rejects);
+            double reward = BuyerAgent.turnReward(intent, sellerPrice, buyerOffer, reservation);
+
+            if (intent.equals("ACCEPT")) {
+                buyerOffer = sellerPrice;
+                rejects = 0;
+            } else if (intent.equals("COUNTER")) {
+                buyerOffer = turn.price;
+                rejects = 0;
+            } else {
+                rejects++;
+            }
+            round++;
+
+            boolean terminal = intent.equals("ACCEPT");
+            long nextState = BuyerAgent.bucketState(round, sellerPrice, buyerOffer, rejects);
+            out.add(state, BuyerAgent.actionIndex(intent), reward, nextState, terminal);
+            awaitingBuyer = false;
+            if (terminal) {
+                break;
+            }
+        }
+    }
+
+    static String classifyBuyerTurn(DatasetParser.Turn turn, double buyerOffer, double sellerPrice) {
+        if ("accept".equals(turn.action)) {
+            return "ACCEPT";
+        }
+        if ("reject".equals(turn.action)) {
+            return "REJECT";
+        }
+        if ("offer".equals(turn.action)) {
+            return turn.price >= sellerPrice ? "ACCEPT" : "COUNTER";
+        }
+        String lower = turn.text != null ? turn.text.toLowerCase() : "";
+        boolean accepting = false;
+        for (String word : ACCEPT_WORDS) {
+            if (lower.contains(word)) {
+                accepting = true;
+                break;
+            }
+        }
+        if (accepting && (turn.price <= 0 || turn.price >= sellerPrice)) {
+            return "ACCEPT";
+        }
+        if (turn.price > 0 && Math.abs(turn.price - buyerOffer) >= 0.01) {
+            return "COUNTER";
+        }
+        return "REJECT";
+    }
+
+    /**
+     * Sweeps the transitions epochs times in shuffled order, splitting each sweep over
+     * workers threads (at least one). Returns the mean absolute TD error of each epoch.
+     */
+    public static double[] fit(QTable qTable, Transitions data, int epochs, int workers,
+                               double alpha, double gamma, long seed) throws InterruptedException {
+        workers = Math.max(1, workers);
+        double[] errors = new double[epochs];
+        int[] order = new int[data.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(seed);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                for (int i = order.length - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                }
+
+                List<Future<Double>> parts = new ArrayList<>();
+                int chunk = (order.length + workers - 1) / workers;
+                for (int w = 0; w < workers; w++) {
+                    final int from = w * chunk;
+                    final int to = Math.min(order.length, from + chunk);
+                    if (from >= to) break;
+                    parts.add(pool.submit(() -> {
+                        double sum = 0.0;
+                        for (int k = from; k < to; k++) {
+                            int t = order[k];
+                            double g = data.terminal[t] ? 0.0 : gamma;
+                            sum += Math.abs(qTable.update(data.states[t], data.actions[t], data.rewards[t],
+                                                          data.nextStates[t], alpha, g));
+                        }
+                        return sum;
+                    }));
+                }
+
+                double total = 0.0;
+                for (Future<Double> part : parts) {
+                    try {
+                        total += part.get();
+                    } catch (ExecutionException e) {
+                        throw new RuntimeException("Offline training worker failed", e.getCause());
+                    }
+                }
+                errors[epoch] = data.size > 0 ? total / data.size : 0.0;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return errors;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        int epochs = Integer.parseInt(opts.getOrDefault("epochs", "20"));
+        int workers = Math.max(1, Integer.parseInt(opts.getOrDefault("workers",
+            String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        double alpha = Double.parseDouble(opts.getOrDefault("alpha", "0.1"));
+        double gamma = Double.parseDouble(opts.getOrDefault("gamma", "0.95"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        String savePath = opts.getOrDefault("save", "q_table.bin");
+
+        System.out.println("=== Offline Q-learning ===");
+        long start = System.nanoTime();
+        List<DatasetParser.Transcript> transcripts = new DatasetParser().parseTranscripts(datasetPath);
+        Transitions data = extractTransitions(transcripts);
+        double extractSeconds = (System.nanoTime() - start) / 1e9;
+
+        int[] actionCounts = new int[3];
+        for (int i = 0; i < data.size; i++) {
+            actionCounts[data.actions[i]]++;
+        }
+        System.out.println("Dialogues: " + transcripts.size() + " | Transitions: " + data.size +
+            " (counter " + actionCounts[0] + ", reject " + actionCounts[1] + ", accept " + actionCounts[2] + ")" +
+            " | Extracted in " + String.format("%.2f", extractSeconds) + "s");
+
+        String loadPath = opts.get("load");
+        QTable qTable = loadPath != null && new File(loadPath).isFile()
+            ? QTableStore.load(loadPath, 3)
+            : new QTable(3);
+
+        start = System.nanoTime();
+        double[] errors = fit(qTable, data, epochs, workers, alpha, gamma, seed);
+        double fitSeconds = (System.nanoTime() - start) / 1e9;
+
+        for (int epoch = 0; epoch < errors.length; epoch++) {
+            System.out.println(String.format("  epoch %3d  mean |TD error| %.4f", epoch + 1, errors[epoch]));
+        }
+        System.out.println("Fitted " + qTable.size() + " states in " + String.format("%.2f", fitSeconds) + "s (" +
+            String.format("%.0f", (double) data.size * epochs / Math.max(fitSeconds, 1e-9)) + " updates/sec, " +
+            workers + " workers)");
+
+        QTableStore.save(qTable, savePath);
+        System.out.println("Saved to: " + savePath);
+    }
+}
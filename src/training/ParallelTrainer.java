@@ -0,0 +1,152 @@
+package training;
+
+import agents.BuyerAgent;
+import agents.LinearQFunction;
+import agents.QFunction;
+import agents.QTable;
+import agents.QTableStore;
+import data.DatasetParser;
+import dialogue.DialogueGenerator;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs self-play training on N worker threads that all learn into one shared,
+ * lock-free QTable (or one LinearQFunction with --policy linear). Each worker owns its BuyerAgent, seller and RNG (seeded from
+ * the run seed and the worker index); only the Q-values are shared.
+ *
+ * --deterministic forces a single worker so a given seed always produces the same table.
+ * --bench trains a fresh table at 1, 2, 4, ... up to --workers threads and prints the scaling.
+ *
+ * Usage: ParallelTrainer [--episodes N] [--workers W] [--seller name] [--dataset path]
+ *                        [--seed S] [--policy tabular|linear] [--deterministic] [--bench] [--save q_table.bin]
+ */
+public class ParallelTrainer {
+
+    private final int workers;
+    private final String sellerName;
+    private final List<double[]> trajectories;
+    private final long seed;
+
+    public ParallelTrainer(int workers, String sellerName, List<double[]> trajectories, long seed) {
+        this.workers = Math.max(1, workers);
+        this.sellerName = sellerName;
+        this.trajectories = trajectories;
+        this.seed = seed;
+    }
+
+    public SelfPlayTrainer.WindowStats train(QFunction qTable, long episodes) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<SelfPlayTrainer.WindowStats>> futures = new ArrayList<>();
+
+        for (int w = 0; w < workers; w++) {
+            // Spread any remainder over the first workers.
+            final long share = episodes / workers + (w < episodes % workers ? 1 : 0);
+            final long workerSeed = seed + 0x9E3779B97F4A7C15L * (w + 1);
+            futures.add(pool.submit(() -> runWorker(qTable, share, workerSeed)));
+        }
+
+        SelfPlayTrainer.WindowStats total = new SelfPlayTrainer.WindowStats();
+        try {
+            for (Future<SelfPlayTrainer.WindowStats> f : futures) {
+                total.merge(f.get());
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Training worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    private SelfPlayTrainer.WindowStats runWorker(QFunction qTable, long episodes, long workerSeed) {
+        BuyerAgent buyer = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0);
+        buyer.setQFunction(qTable);
+        buyer.setSeed(workerSeed);
+        SellerStrategy seller = SelfPlayTrainer.createSeller(sellerName, trajectories);
+        Random random = new Random(workerSeed ^ 0x5DEECE66DL);
+
+        SelfPlayTrainer.WindowStats stats = new SelfPlayTrainer.WindowStats();
+        for (long ep = 0; ep < episodes; ep++) {
+            stats.add(SelfPlayTrainer.runEpisode(buyer, seller, SelfPlayTrainer.sampleScenario(random), random));
+        }
+        return stats;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        long episodes = Long.parseLong(opts.getOrDefault("episodes", "1000000"));
+        int maxWorkers = Integer.parseInt(opts.getOrDefault("workers",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        String sellerName = opts.getOrDefault("seller", "mixed");
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        if (opts.containsKey("deterministic")) {
+            maxWorkers = 1;
+        }
+
+        List<double[]> trajectories = Collections.emptyList();
+        if (sellerName.equals("dataset") || (sellerName.equals("mixed") && new java.io.File(datasetPath).isFile())) {
+            trajectories = new DatasetParser().parseSellerPriceTrajectories(datasetPath);
+        }
+
+        if (opts.containsKey("bench")) {
+            runScalingBenchmark(episodes, maxWorkers, sellerName, trajectories, seed);
+            return;
+        }
+
+        QFunction qTable;
+        if (opts.containsKey("load")) {
+            qTable = QTableStore.loadPolicy(opts.get("load"), 3);
+        } else if ("linear".equals(opts.get("policy"))) {
+            qTable = new LinearQFunction(3);
+        } else {
+            qTable = new QTable(3);
+        }
+
+        System.out.println("=== Parallel training ===");
+        System.out.println("Episodes: " + episodes + " | Workers: " + maxWorkers + " | Seller: " + sellerName + " | Seed: " + seed);
+        long start = System.nanoTime();
+        SelfPlayTrainer.WindowStats total = new ParallelTrainer(maxWorkers, sellerName, trajectories, seed).train(qTable, episodes);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Episodes: " + total.episodes + " in " + String.format("%.2f", seconds) + "s (" +
+            String.format("%.0f", total.episodes / seconds) + " episodes/sec)");
+        System.out.println("Deal rate: " + String.format("%.1f%%", total.dealRate() * 100) +
+            " | Walk-away rate: " + String.format("%.1f%%", total.walkAwayRate() * 100) +
+            " | Average surplus: $" + String.format("%.2f", total.avgSurplus()));
+        System.out.println((qTable instanceof QTable ? "States learned: " : "Policy parameters: ") + qTable.size());
+
+        if (opts.containsKey("save")) {
+            QTableStore.save(qTable, opts.get("save"));
+            System.out.println("Saved to: " + opts.get("save"));
+        }
+    }
+
+    private static void runScalingBenchmark(long episodes, int maxWorkers, String sellerName,
+                                            List<double[]> trajectories, long seed) throws InterruptedException {
+        System.out.println("=== Training scaling benchmark (" + episodes + " episodes per run) ===");
+        System.out.println(String.format("%8s %12s %10s %10s", "workers", "eps/sec", "speedup", "states"));
+
+        // Warm up the JIT so the single-worker baseline is not penalised.
+        new ParallelTrainer(1, sellerName, trajectories, seed).train(new QTable(3), Math.min(episodes, 50000));
+
+        double baseline = 0.0;
+        List<Integer> counts = new ArrayList<>();
+        for (int w = 1; w < maxWorkers; w *= 2) {
+            counts.add(w);
+        }
+        counts.add(maxWorkers);
+
+        for (int w : counts) {
+            QTable qTable = new QTable(3);
+            long start = System.nanoTime();
+            new ParallelTrainer(w, sellerName, trajectories, seed).train(qTable, episodes);
+            double rate = episodes / ((System.nanoTime() - start) / 1e9);
+            if (baseline == 0.0) {
+                baseline = rate;
+            }
+            System.out.println(String.format("%8d %12.0f %9.2fx %10d", w, rate, rate / baseline, qTable.size()));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package training;
+
+import agents.BuyerAgent;
+import agents.QTable;
+import agents.QTableStore;
+import data.DatasetParser;
+import dialogue.DialogueGenerator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Plays every combination of buyer settings against every scripted seller and ranks the settings.
+ *
+ * A configuration fixes the tactic mode, the walk-away thresholds, alpha/gamma/epsilon and the
+ * concession curve of decidePrice; each option takes a comma-separated list and the tournament
+ * runs the full cross-product. Every (configuration, seller) pair is one series of --episodes
+ * negotiations played by its own BuyerAgent, learning as it goes from a fresh Q-table (or a copy
+ * of --load). Series run in parallel on --workers threads.
+ *
+ * Scenarios depend only on the seed and the seller, so all configurations face the same listings;
+ * the buyer's RNG is seeded from the seed, the configuration and the seller. A given seed gives
+ * the same report whatever the number of workers.
+ *
+ * Configurations are ranked by mean surplus per negotiation as a share of the buyer's reservation
+ * price, a negotiation without a deal counting as zero, so neither a high deal rate at a bad price
+ * nor a few lucky deals wins on its own. --output also writes one CSV row per configuration and seller.
+ *
+ * Usage: PolicyTournament [--episodes N] [--sellers anchoring,concession,mixed] [--workers W] [--seed S]
+ *                         [--tactics adaptive,hard_ball,opportunistic,sneaky] [--min-walk 5,7,9] [--hard-walk 11,13,15]
+ *                         [--alpha 0.1] [--gamma 0.95] [--epsilon 0.05,0.2]
+ *                         [--concession-rounds 6,8,10] [--concession-share 0.2,0.3,0.4]
+ *                         [--dataset path] [--load q_table.bin] [--top K] [--output results.csv]
+ */
+public class PolicyTournament {
+
+    public static class Config {
+        public final String tactic;
+        public final int minWalk;
+        public final int hardWalk;
+        public final double alpha;
+        public final double gamma;
+        public final double epsilon;
+        public final double concessionRounds;
+        public final double concessionShare;
+
+        public Config(String tactic, int minWalk, int hardWalk, double alpha, double gamma, double epsilon,
+                      double concessionRounds, double concessionShare) {
+            this.tactic = tactic;
+            this.minWalk = minWalk;
+            this.hardWalk = hardWalk;
+            this.alpha = alpha;
+            this.gamma = gamma;
+            this.epsilon = epsilon;
+            this.concessionRounds = concessionRounds;
+            this.concessionShare = concessionShare;
+        }
+
+        void applyTo(BuyerAgent buyer) {
+            buyer.setTacticMode(tactic);
+            buyer.setWalkAwayThresholds(minWalk, hardWalk, buyer.getMaxConsecutiveRejectsBeforeWalkAway());
+            buyer.setLearningRates(alpha, gamma);
+            buyer.setEpsilon(epsilon);
+            buyer.setConcession(concessionRounds, concessionShare);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s walk=%d/%d a=%.3g g=%.3g e=%.3g concede=%.3g/%.3g",
+                tactic, minWalk, hardWalk, alpha, gamma, epsilon, concessionRounds, concessionShare);
+        }
+    }
+
+    /** Outcome of a series, or of several merged. */
+    public static class Result {
+        public int episodes;
+        public int deals;
+        public int walkAways;
+        public long roundsToClose;
+        public double surplusShare;
+
+        void add(SelfPlayTrainer.EpisodeResult r, SelfPlayTrainer.Scenario scenario) {
+            episodes++;
+            if (r.deal) {
+                deals++;
+                roundsToClose += r.rounds;
+                surplusShare += r.surplus / scenario.reservationPrice;
+            }
+            if (r.walkedAway) {
+                walkAways++;
+            }
+        }
+
+        void merge(Result other) {
+            episodes += other.episodes;
+            deals += other.deals;
+            walkAways += other.walkAways;
+            roundsToClose += other.roundsToClose;
+            surplusShare += other.surplusShare;
+        }
+
+        public double dealRate() { return episodes > 0 ? deals / (double) episodes : 0.0; }
+        public double walkAwayRate() { return episodes > 0 ? walkAways / (double) episodes : 0.0; }
+        // Mean (reservation - price) / reservation over deals.
+        public double surplusPerDeal() { return deals > 0 ? surplusShare / deals : 0.0; }
+        // The same, over all negotiations with no deal counting as zero: the ranking score.
+        public double surplusPerNegotiation() { return episodes > 0 ? surplusShare / episodes : 0.0; }
+        public double avgRoundsToClose() { return deals > 0 ? roundsToClose / (double) deals : 0.0; }
+    }
+
+    private final List<Config> configs;
+    private final List<String> sellers;
+    private final List<double[]> trajectories;
+    private final QTable startingPolicy;
+    private final long episodes;
+    private final long seed;
+    private final int workers;
+
+    public PolicyTournament(List<Config> configs, List<String> sellers, List<double[]> trajectories,
+                            QTable startingPolicy, long episodes, long seed, int workers) {
+        this.configs = configs;
+        this.sellers = sellers;
+        this.trajectories = trajectories;
+        this.startingPolicy = startingPolicy;
+        this.episodes = episodes;
+        this.seed = seed;
+        this.workers = Math.max(1, workers);
+    }
+
+    // results[config][seller]
+    public Result[][] run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Result[][] results = new Result[configs.size()][sellers.size()];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < configs.size(); c++) {
+            for (int s = 0; s < sellers.size(); s++) {
+                final int config = c;
+                final int seller = s;
+                futures.add(pool.submit(() -> {
+                    results[config][seller] = runSeries(config, seller);
+                }));
+            }
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Tournament series failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    private Result runSeries(int config, int sellerIndex) {
+        BuyerAgent buyer = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0);
+        buyer.setQTable(startingPolicy != null ? startingPolicy.copy() : new QTable(3));
+        configs.get(config).applyTo(buyer);
+        buyer.setSeed(seed + 0x9E3779B97F4A7C15L * (config + 1) + 0xC2B2AE3D27D4EB4FL * (sellerIndex + 1));
+        SellerStrategy seller = SelfPlayTrainer.createSeller(sellers.get(sellerIndex), trajectories);
+        Random random = new Random(seed ^ (0x5DEECE66DL * (sellerIndex + 1)));
+
+        Result result = new Result();
+        for (long ep = 0; ep < episodes; ep++) {
+            SelfPlayTrainer.Scenario scenario = SelfPlayTrainer.sampleScenario(random);
+            result.add(SelfPlayTrainer.runEpisode(buyer, seller, scenario, random), scenario);
+        }
+        return result;
+    }
+
+    public static List<Config> crossProduct(List<String> tactics, List<Integer> minWalks, List<Integer> hardWalks,
+                                            List<Double> alphas, List<Double> gammas, List<Double> epsilons,
+                                            List<Double> concessionRounds, List<Double> concessionShares) {
+        List<Config> configs = new ArrayList<>();
+        for (String tactic : tactics)
+            for (int minWalk : minWalks)
+                for (int hardWalk : hardWalks)
+                    for (double alpha : alphas)
+                        for (double gamma : gammas)
+                            for (double epsilon : epsilons)
+                                for (double rounds : concessionRounds)
+                                    for (double share : concessionShares)
+                                        configs.add(new Config(tactic, minWalk, hardWalk, alpha, gamma, epsilon, rounds, share));
+        return configs;
+    }
+
+    private static List<String> strings(String csv) {
+        List<String> values = new ArrayList<>();
+        for (String v : csv.split(",")) {
+            if (!v.trim().isEmpty()) values.add(v.trim());
+        }
+        return values;
+    }
+
+    private static List<Integer> ints(String csv) {
+        List<Integer> values = new ArrayList<>();
+        for (String v : strings(csv)) values.add(Integer.parseInt(v));
+        return values;
+    }
+
+    private static List<Double> doubles(String csv) {
+        List<Double> values = new ArrayList<>();
+        for (String v : strings(csv)) values.add(Double.parseDouble(v));
+        return values;
+    }
+
+    private static void writeCsv(String path, List<Config> configs, List<String> sellers, Result[][] results)
+            throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            out.println("tactic,min_walk,hard_walk,alpha,gamma,epsilon,concession_rounds,concession_share," +
+                        "seller,episodes,deal_rate,walk_rate,surplus_per_deal,surplus_per_negotiation,rounds_to_close");
+            for (int c = 0; c < configs.size(); c++) {
+                Config cfg = configs.get(c);
+                for (int s = 0; s < sellers.size(); s++) {
+                    Result r = results[c][s];
+                    out.println(String.format(Locale.ROOT, "%s,%d,%d,%s,%s,%s,%s,%s,%s,%d,%.4f,%.4f,%.4f,%.4f,%.2f",
+                        cfg.tactic, cfg.minWalk, cfg.hardWalk, cfg.alpha, cfg.gamma, cfg.epsilon,
+                        cfg.concessionRounds, cfg.concessionShare, sellers.get(s), r.episodes, r.dealRate(),
+                        r.walkAwayRate(), r.surplusPerDeal(), r.surplusPerNegotiation(), r.avgRoundsToClose()));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = SelfPlayTrainer.parseArgs(args);
+        long episodes = Long.parseLong(opts.getOrDefault("episodes", "2000"));
+        List<String> sellers = strings(opts.getOrDefault("sellers", "anchoring,concession,mixed"));
+        int workers = Integer.parseInt(opts.getOrDefault("workers",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        int top = Integer.parseInt(opts.getOrDefault("top", "20"));
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+
+        List<String> tactics = strings(opts.getOrDefault("tactics", "adaptive"));
+        BuyerAgent check = new BuyerAgent((DialogueGenerator) null, 0.0, 0.0);
+        for (String tactic : tactics) {
+            check.setTacticMode(tactic);   // fail on a typo before any series starts
+        }
+        List<Config> configs = crossProduct(
+            tactics,
+            ints(opts.getOrDefault("min-walk", "5,7,9")),
+            ints(opts.getOrDefault("hard-walk", "11,13,15")),
+            doubles(opts.getOrDefault("alpha", "0.1")),
+            doubles(opts.getOrDefault("gamma", "0.95")),
+            doubles(opts.getOrDefault("epsilon", "0.05,0.2")),
+            doubles(opts.getOrDefault("concession-rounds", "6,8,10")),
+            doubles(opts.getOrDefault("concession-share", "0.2,0.3,0.4")));
+
+        List<double[]> trajectories = Collections.emptyList();
+        if (sellers.contains("dataset") || (sellers.contains("mixed") && new File(datasetPath).isFile())) {
+            trajectories = new DatasetParser().parseSellerPriceTrajectories(datasetPath);
+        }
+        QTable startingPolicy = opts.containsKey("load") ? QTableStore.load(opts.get("load"), 3) : null;
+
+        System.out.println("=== Policy tournament ===");
+        System.out.println("Configurations: " + configs.size() + " | Sellers: " + String.join(",", sellers) +
+            " | Episodes per series: " + episodes + " | Workers: " + workers + " | Seed: " + seed);
+        long start = System.nanoTime();
+        Result[][] results = new PolicyTournament(configs, sellers, trajectories, startingPolicy, episodes, seed, workers).run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = episodes * configs.size() * sellers.size();
+        System.out.println("Played " + total + " negotiations in " + String.format("%.2f", seconds) + "s (" +
+            String.format("%.0f", total / seconds) + " negotiations/sec)");
+
+        List<Integer> ranking = new ArrayList<>();
+        Result[] overall = new Result[configs.size()];
+        for (int c = 0; c < configs.size(); c++) {
+            overall[c] = new Result();
+            for (Result r : results[c]) {
+                overall[c].merge(r);
+            }
+            ranking.add(c);
+        }
+        // Ties keep cross-product order, so the report is stable.
+        ranking.sort((a, b) -> Double.compare(overall[b].surplusPerNegotiation(), overall[a].surplusPerNegotiation()));
+
+        System.out.println(String.format("%4s %8s %8s %10s %10s %8s  %s",
+            "rank", "deal%", "walk%", "surplus%", "per_neg%", "rounds", "configuration"));
+        for (int i = 0; i < Math.min(top, ranking.size()); i++) {
+            int c = ranking.get(i);
+            Result r = overall[c];
+            System.out.println(String.format(Locale.ROOT, "%4d %8.1f %8.1f %10.2f %10.2f %8.2f  %s", i + 1,
+                r.dealRate() * 100, r.walkAwayRate() * 100, r.surplusPerDeal() * 100,
+                r.surplusPerNegotiation() * 100, r.avgRoundsToClose(), configs.get(c)));
+        }
+
+        if (opts.containsKey("output")) {
+            writeCsv(opts.get("output"), configs, sellers, results);
+            System.out.println("Per-seller results written to " + opts.get("output"));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package training;
+
+import agents.BuyerAgent;
+import data.DatasetParser;
+import java.util.*;
+
+/**
+ * Headless training loop: a BuyerAgent negotiates against simulated sellers with
+ * dialogue generation bypassed, so the Q-table sees millions of episodes instead of
+ * the handful a human can type.
+ *
+ * Usage: SelfPlayTrainer [--episodes N] [--seller anchoring|concession|dataset|mixed]
+ *                        [--dataset path] [--seed S] [--epsilon E] [--report-every K]
+ *                        [--policy tabular|linear] [--replay capacity] [--replay-batch B] [--prioritized]
+ *                        [--load q_table.bin] [--save q_table.bin]
+ */
+public class SelfPlayTrainer {
+
+    // Same limits InteractiveNegotiation applies to a live negotiation.
+    public static final int MAX_ROUNDS = 20;
+    public static final int MAX_BUYER_ROUNDS = 15;
+
+    public static class Scenario {
+        public final double listPrice;
+        public final double floorPrice;
+        public final double reservationPrice;
+        public final double targetPrice;
+
+        public Scenario(double listPrice, double floorPrice, double reservationPrice, double targetPrice) {
+            this.listPrice = listPrice;
+            this.floorPrice = floorPrice;
+            this.reservationPrice = reservationPrice;
+            this.targetPrice = targetPrice;
+        }
+    }
+
+    public static class EpisodeResult {
+        public boolean deal;
+        public boolean walkedAway;
+        public double price;
+        public int rounds;
+        public double surplus;
+    }
+
+    // Listing prices are log-uniform between $10 and $2000; buyer and seller limits are
+    // drawn relative to the listing so that roughly half of the episodes have a zone of agreement.
+    public static Scenario sampleScenario(Random random) {
+        double listPrice = Math.round(Math.exp(Math.log(10) + random.nextDouble() * Math.log(200)) * 100.0) / 100.0;
+        double floor = listPrice * (0.5 + random.nextDouble() * 0.4);
+        double reservation = listPrice * (0.55 + random.nextDouble() * 0.4);
+        double target = reservation * (0.5 + random.nextDouble() * 0.3);
+        return new Scenario(listPrice, round2(floor), round2(reservation), round2(target));
+    }
+
+    public static EpisodeResult runEpisode(BuyerAgent buyer, SellerStrategy seller, Scenario scenario, Random random) {
+        buyer.reset(scenario.reservationPrice, scenario.targetPrice);
+        seller.reset(scenario.listPrice, scenario.floorPrice, random);
+        buyer.startNegotiation();
+
+        EpisodeResult result = new EpisodeResult();
+        int round = 1;
+        while (round < MAX_ROUNDS) {
+            double buyerOffer = buyer.getCurrentOffer();
+            if (seller.accepts(buyerOffer)) {
+                result.deal = true;
+                result.price = buyerOffer;
+                break;
+            }
+
+            double sellerPrice = seller.nextPrice(round, buyerOffer);
+            String intent = buyer.decideTurn(sellerPrice);
+
+            if (BuyerAgent.WALK_AWAY.equals(intent)) {
+                result.walkedAway = true;
+                break;
+            }
+            if (buyer.isDealReached()) {
+                result.deal = true;
+                result.price = sellerPrice;
+                break;
+            }
+            if (buyer.getState().getRound() > MAX_BUYER_ROUNDS) {
+                break;
+            }
+            round++;
+        }
+
+        buyer.endNegotiation(result.deal, result.price);
+        result.rounds = buyer.getState().getRound();
+        if (result.deal) {
+            result.surplus = scenario.reservationPrice - result.price;
+        }
+        return result;
+    }
+
+    public static SellerStrategy createSeller(String name, List<double[]> trajectories) {
+        switch (name) {
+            case "anchoring":
+                return new AnchoringSeller();
+            case "concession":
+                return new ConcessionSeller();
+            case "dataset":
+                return new DatasetSeller(trajectories);
+            case "mixed":
+                List<SellerStrategy> all = new ArrayList<>();
+                all.add(new AnchoringSeller());
+                all.add(new ConcessionSeller(6, 0.7));
+                all.add(new ConcessionSeller(12, 2.0));
+                if (trajectories != null && !trajectories.isEmpty()) {
+                    all.add(new DatasetSeller(trajectories));
+                }
+                return new MixedSeller(all);
+            default:
+                throw new IllegalArgumentException("Unknown seller strategy: " + name);
+        }
+    }
+
+    /** Rolling statistics over one reporting window. */
+    public static class WindowStats {
+        public int episodes;
+        public int deals;
+        public int walkAways;
+        public long rounds;
+        public double surplus;
+
+        public void add(EpisodeResult r) {
+            episodes++;
+            rounds += r.rounds;
+            if (r.deal) {
+                deals++;
+                surplus += r.surplus;
+            }
+            if (r.walkedAway) {
+                walkAways++;
+            }
+        }
+
+        public void merge(WindowStats other) {
+            episodes += other.episodes;
+            deals += other.deals;
+            walkAways += other.walkAways;
+            rounds += other.rounds;
+            surplus += other.surplus;
+        }
+
+        public double dealRate() { return episodes > 0 ? deals / (double) episodes : 0.0; }
+        public double walkAwayRate() { return episodes > 0 ? walkAways / (double) episodes : 0.0; }
+        public double avgRounds() { return episodes > 0 ? rounds / (double) episodes : 0.0; }
+        public double avgSurplus() { return deals > 0 ? surplus / deals : 0.0; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parseArgs(args);
+        long episodes = Long.parseLong(opts.getOrDefault("episodes", "1000000"));
+        String sellerName = opts.getOrDefault("seller", "mixed");
+        String datasetPath = opts.getOrDefault("dataset", "data/craigslist_bargains/train.json");
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        long reportEvery = Long.parseLong(opts.getOrDefault("report-every", String.valueOf(Math.max(1, episodes / 20))));
+
+        List<double[]> trajectories = Collections.emptyList();
+        if (sellerName.equals("dataset") || (sellerName.equals("mixed") && new java.io.File(datasetPath).isFile())) {
+            trajectories = new DatasetParser().parseSellerPriceTrajectories(datasetPath);
+        }
+        SellerStrategy seller = createSeller(sellerName, trajectories);
+
+        BuyerAgent buyer = new BuyerAgent(null, 0.0, 0.0, opts.get("load"));
+        buyer.setSeed(seed);
+        if ("linear".equals(opts.get("policy")) && !opts.containsKey("load")) {
+            buyer.useLinearPolicy();
+        }
+        if (opts.containsKey("epsilon")) {
+            buyer.setEpsilon(Double.parseDouble(opts.get("epsilon")));
+        }
+        if (opts.containsKey("replay")) {
+            buyer.enableExperienceReplay(Integer.parseInt(opts.get("replay")),
+                Integer.parseInt(opts.getOrDefault("replay-batch", "8")), opts.containsKey("prioritized"));
+        }
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+
+        System.out.println("=== Self-play training ===");
+        System.out.println("Episodes: " + episodes + " | Seller: " + seller.name() + " | Seed: " + seed);
+        System.out.println(String.format("%12s %8s %10s %8s %9s %8s %12s",
+            "episodes", "deal%", "surplus", "rounds", "walk%", "states", "eps/sec"));
+
+        WindowStats window = new WindowStats();
+        WindowStats total = new WindowStats();
+        long start = System.nanoTime();
+        long windowStart = start;
+
+        for (long ep = 1; ep <= episodes; ep++) {
+            EpisodeResult result = runEpisode(buyer, seller, sampleScenario(random), random);
+            window.add(result);
+
+            if (ep % reportEvery == 0 || ep == episodes) {
+                long now = System.nanoTime();
+                double rate = window.episodes / ((now - windowStart) / 1e9);
+                System.out.println(String.format("%12d %7.1f%% %10.2f %8.2f %8.1f%% %8d %12.0f",
+                    ep, window.dealRate() * 100, window.avgSurplus(), window.avgRounds(),
+                    window.walkAwayRate() * 100, buyer.getQTableSize(), rate));
+                total.merge(window);
+                window = new WindowStats();
+                windowStart = now;
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("\n=== Training Summary ===");
+        System.out.println("Episodes: " + total.episodes + " in " + String.format("%.2f", seconds) + "s (" +
+            String.format("%.0f", total.episodes / seconds) + " episodes/sec)");
+        System.out.println("Deal rate: " + String.format("%.1f%%", total.dealRate() * 100) +
+            " | Walk-away rate: " + String.format("%.1f%%", total.walkAwayRate() * 100));
+        System.out.println("Average surplus vs reservation: $" + String.format("%.2f", total.avgSurplus()) +
+            " | Average rounds: " + String.format("%.2f", total.avgRounds()));
+
+        if (opts.containsKey("save")) {
+            buyer.saveQTable(opts.get("save"));
+        }
+    }
+
+    public static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                String key = args[i].substring(2);
+                String value = (i + 1 < args.length && !args[i + 1].startsWith("--")) ? args[++i] : "true";
+                opts.put(key, value);
+            }
+        }
+        return opts;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
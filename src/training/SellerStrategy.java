@@ -0,0 +1,20 @@
+package training;
+
+import java.util.Random;
+
+/**
+ * Simulated seller used to drive a BuyerAgent without a human at the keyboard.
+ */
+public interface SellerStrategy {
+
+    // Called at the start of every episode. floorPrice is the lowest price the seller will take.
+    void reset(double listPrice, double floorPrice, Random random);
+
+    // Asking price for the given round (1-based), after seeing the buyer's latest offer.
+    double nextPrice(int round, double buyerOffer);
+
+    // Whether the seller takes the buyer's standing offer instead of countering.
+    boolean accepts(double buyerOffer);
+
+    String name();
+}
@@ -0,0 +1,281 @@
+package util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous diagnostics log.
+ *
+ * Callers never touch the console: a message is copied into a slot of a fixed-size ring buffer
+ * (one CAS on the claim counter) and a single daemon thread formats and writes it, a batch at a
+ * time. When the ring is full the message is dropped and counted instead of blocking the caller;
+ * the drain thread reports how many were lost. Everything left in the ring is written on exit.
+ *
+ * Lines look like "12:03:04.567 INFO  [main] DatasetParser: Processed 160 elements".
+ *
+ * System properties: haggle.log.level (DEBUG, INFO, WARN, ERROR; default INFO),
+ * haggle.log.file (append to a file instead of stdout), haggle.log.capacity (slots, default 8192).
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = ringSize(Integer.getInteger("haggle.log.capacity", 8192));
+    private static final int MASK = CAPACITY - 1;
+    private static final int BATCH = 256;
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+
+    // Vyukov-style slots: a slot is free for claim number n when sequence == n, and holds
+    // message n once the producer sets sequence = n + 1.
+    private static final class Slot {
+        volatile long sequence;
+        long timeMillis;
+        Level level;
+        String thread;
+        String source;
+        String message;
+        Throwable error;
+    }
+
+    private static final Slot[] RING = new Slot[CAPACITY];
+    private static final AtomicLong claimed = new AtomicLong();
+    private static volatile long drained;
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile Level threshold = parseLevel(System.getProperty("haggle.log.level"), Level.INFO);
+    private static volatile boolean held;
+    // Set while the drain thread is (about to be) parked on an empty ring; producers then unpark it.
+    private static volatile boolean drainerParked;
+    private static final PrintStream out = openOutput(System.getProperty("haggle.log.file"));
+    private static final Thread drainer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            RING[i] = new Slot();
+            RING[i].sequence = i;
+        }
+        drainer = new Thread(Log::drainLoop, "log-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(2000), "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static Level getLevel() {
+        return threshold;
+    }
+
+    public static void debug(String source, String message) {
+        log(Level.DEBUG, source, message, null);
+    }
+
+    public static void info(String source, String message) {
+        log(Level.INFO, source, message, null);
+    }
+
+    public static void warn(String source, String message) {
+        log(Level.WARN, source, message, null);
+    }
+
+    public static void error(String source, String message) {
+        log(Level.ERROR, source, message, null);
+    }
+
+    public static void error(String source, String message, Throwable error) {
+        log(Level.ERROR, source, message, error);
+    }
+
+    public static void log(Level level, String source, String message, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long n = claimed.get();
+        Slot slot;
+        while (true) {
+            slot = RING[(int) n & MASK];
+            long sequence = slot.sequence;
+            if (sequence == n) {
+                if (claimed.compareAndSet(n, n + 1)) {
+                    break;
+                }
+                n = claimed.get();
+            } else if (sequence < n) {
+                // The drain thread hasn't freed this slot yet: the ring is full.
+                dropped.increment();
+                return;
+            } else {
+                n = claimed.get();
+            }
+        }
+        slot.timeMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.thread = Thread.currentThread().getName();
+        slot.source = source;
+        slot.message = message;
+        slot.error = error;
+        slot.sequence = n + 1;
+        if (drainerParked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Keeps queued messages back (up to the ring's capacity) until release or flush, e.g. while
+     * the console is prompting and output from background loading would land mid-prompt.
+     */
+    public static void hold() {
+        held = true;
+    }
+
+    public static void release() {
+        held = false;
+        LockSupport.unpark(drainer);
+    }
+
+    // Releases any hold and waits until everything logged before the call has been written.
+    public static void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    private static void flush(long timeoutMillis) {
+        long target = claimed.get();
+        release();
+        long deadline = timeoutMillis == Long.MAX_VALUE ? Long.MAX_VALUE
+            : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (drained < target && drainer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+    }
+
+    private static void drainLoop() {
+        StringBuilder sb = new StringBuilder(8192);
+        long n = 0;
+        long reportedDrops = 0;
+        while (true) {
+            int written = 0;
+            if (!held) {
+                while (written < BATCH) {
+                    Slot slot = RING[(int) n & MASK];
+                    if (slot.sequence != n + 1) {
+                        break;
+                    }
+                    format(sb, slot);
+                    slot.thread = null;
+                    slot.source = null;
+                    slot.message = null;
+                    slot.error = null;
+                    slot.sequence = n + CAPACITY;
+                    n++;
+                    written++;
+                }
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    sb.append("Log: dropped ").append(drops - reportedDrops)
+                      .append(" messages (ring buffer full)").append(System.lineSeparator());
+                    reportedDrops = drops;
+                }
+            }
+            if (sb.length() > 0) {
+                out.print(sb);
+                out.flush();
+                sb.setLength(0);
+            }
+            drained = n;
+            if (written == 0) {
+                // Publish the flag before re-checking the ring, so a message published in between
+                // either is seen here or sees the flag and unparks us.
+                drainerParked = true;
+                if (held || RING[(int) n & MASK].sequence != n + 1) {
+                    LockSupport.park();
+                }
+                drainerParked = false;
+            }
+        }
+    }
+
+    private static void format(StringBuilder sb, Slot slot) {
+        long millisOfDay = Math.floorMod(slot.timeMillis + TimeZone.getDefault().getOffset(slot.timeMillis),
+                                         TimeUnit.DAYS.toMillis(1));
+        long seconds = millisOfDay / 1000;
+        pad2(sb, seconds / 3600).append(':');
+        pad2(sb, (seconds / 60) % 60).append(':');
+        pad2(sb, seconds % 60).append('.');
+        long millis = millisOfDay % 1000;
+        if (millis < 100) sb.append('0');
+        if (millis < 10) sb.append('0');
+        sb.append(millis).append(' ');
+        String level = slot.level.name();
+        sb.append(level);
+        for (int i = level.length(); i < 6; i++) {
+            sb.append(' ');
+        }
+        sb.append('[').append(slot.thread).append("] ");
+        if (slot.source != null) {
+            sb.append(slot.source).append(": ");
+        }
+        sb.append(slot.message).append(System.lineSeparator());
+        if (slot.error != null) {
+            StringWriter trace = new StringWriter();
+            slot.error.printStackTrace(new PrintWriter(trace));
+            sb.append(trace);
+        }
+    }
+
+    private static StringBuilder pad2(StringBuilder sb, long value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    private static Level parseLevel(String name, Level fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    private static PrintStream openOutput(String file) {
+        if (file != null && !file.isEmpty()) {
+            try {
+                return new PrintStream(new FileOutputStream(file, true), false, "UTF-8");
+            } catch (IOException e) {
+                System.err.println("Log: cannot open " + file + " (" + e.getMessage() + "), using stdout");
+            }
+        }
+        return System.out;
+    }
+
+    private static int ringSize(int requested) {
+        int clamped = Math.max(64, Math.min(requested, 1 << 20));
+        int size = Integer.highestOneBit(clamped);
+        return size < clamped ? size << 1 : size;
+    }
+}
@@ -0,0 +1,115 @@
+package util;
+
+import java.util.Locale;
+
+/**
+ * Two-decimal price formatting without going through java.util.Formatter.
+ *
+ * Output matches {@code String.format("%.2f", price)} (half-up on the shortest decimal
+ * representation), except that the decimal separator is always '.'. Prices are converted to
+ * whole cents and written digit by digit; the few values that sit on a rounding boundary, and
+ * anything negative, non-finite or very large, take the slow path through String.format.
+ *
+ * The last price formatted on each thread is cached, since a turn usually renders the same
+ * price several times.
+ */
+public final class PriceFormat {
+
+    // Above this, price * 100 carries too little precision to call the rounding direction.
+    private static final double MAX_FAST_PRICE = 1e7;
+    private static final double BOUNDARY_EPSILON = 1e-6;
+
+    private static final class Cache {
+        long bits = Double.doubleToRawLongBits(Double.NaN);
+        String plain;
+        String dollars;
+        final char[] buffer = new char[24];
+    }
+
+    private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(Cache::new);
+
+    private PriceFormat() {
+    }
+
+    // "1234.50"
+    public static String format(double price) {
+        Cache cache = lookup(price);
+        if (cache.plain == null) {
+            cache.plain = render(cache, price);
+        }
+        return cache.plain;
+    }
+
+    // "$1234.50"
+    public static String dollars(double price) {
+        Cache cache = lookup(price);
+        if (cache.dollars == null) {
+            if (cache.plain == null) {
+                cache.plain = render(cache, price);
+            }
+            cache.dollars = "$" + cache.plain;
+        }
+        return cache.dollars;
+    }
+
+    // Appends the formatted price without creating any intermediate strings.
+    public static StringBuilder appendTo(StringBuilder sb, double price) {
+        long cents = toCents(price);
+        if (cents < 0) {
+            return sb.append(slowFormat(price));
+        }
+        sb.append(cents / 100).append('.');
+        int fraction = (int) (cents % 100);
+        return sb.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+
+    /**
+     * Whole cents for the fast path, or -1 when the value needs the slow path.
+     */
+    static long toCents(double price) {
+        if (!(price >= 0 && price < MAX_FAST_PRICE)) {
+            return -1;
+        }
+        double scaled = price * 100.0;
+        double whole = Math.floor(scaled);
+        double fraction = scaled - whole;
+        if (Math.abs(fraction - 0.5) < BOUNDARY_EPSILON) {
+            return -1;
+        }
+        return (long) whole + (fraction > 0.5 ? 1 : 0);
+    }
+
+    private static Cache lookup(double price) {
+        Cache cache = CACHE.get();
+        long bits = Double.doubleToRawLongBits(price);
+        if (bits != cache.bits) {
+            cache.bits = bits;
+            cache.plain = null;
+            cache.dollars = null;
+        }
+        return cache;
+    }
+
+    private static String render(Cache cache, double price) {
+        long cents = toCents(price);
+        if (cents < 0) {
+            return slowFormat(price);
+        }
+        char[] buf = cache.buffer;
+        int pos = buf.length;
+        buf[--pos] = (char) ('0' + cents % 10);
+        cents /= 10;
+        buf[--pos] = (char) ('0' + cents % 10);
+        cents /= 10;
+        buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' + cents % 10);
+            cents /= 10;
+        } while (cents > 0);
+        return new String(buf, pos, buf.length - pos);
+    }
+
+    private static String slowFormat(double price) {
+        return String.format(Locale.ROOT, "%.2f", price);
+    }
+}